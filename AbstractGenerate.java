@@ -14,6 +14,33 @@ import java.util.List;
 
 public abstract class AbstractGenerate
 {
+    /** Where the trace is written. */
+    protected final TraceSink trace;
+
+    /**
+     * Create a generator which writes its trace straight to standard output.
+     */
+    public AbstractGenerate() {
+        this( TraceSink.printStream( System.out ) );
+    }
+
+    /**
+     * Create a generator which writes its trace to the given sink.
+     * 
+     * @param trace The sink to write the trace to
+     */
+    public AbstractGenerate( TraceSink trace ) {
+        this.trace = trace;
+    }
+
+    /**
+     * Return the sink this generator writes its trace to.
+     * 
+     * @return The trace sink
+     */
+    public TraceSink getTraceSink() {
+        return trace;
+    }
 
     /**
     *
@@ -22,14 +49,12 @@ public abstract class AbstractGenerate
     **/
 
     public void insertTerminal( Token token ) {
-        String tt = Token.getName( token.symbol );
+        trace.print( "rggTOKEN " ).print( Token.getName( token.symbol ) );
         
         if( (token.symbol == Token.identifier) || (token.symbol == Token.numberConstant) || (token.symbol == Token.stringConstant) )
-            tt += " '" + token.text + "'";
-
-        tt += " on line " + token.lineNumber;
+            trace.print( " '" ).print( token.text ).print( "'" );
 
-        System.out.println( "rggTOKEN " + tt );
+        trace.print( " on line " ).print( token.lineNumber ).println();
     } // end of method insertTerminal
 
     /**
@@ -48,7 +73,7 @@ public abstract class AbstractGenerate
      * @param v The variable to add
      */
     public void addVariable( Variable v ) {
-        System.out.println( "rggDECL " + v );
+        traceVariable( "rggDECL ", v );
     }
 
     /**
@@ -57,7 +82,35 @@ public abstract class AbstractGenerate
      * @param v The variable to remove
      */
     public void removeVariable( Variable v ) {
-        System.out.println( "rggDROP " + v );
+        traceVariable( "rggDROP ", v );
+    }
+
+    /**
+     * Write a line describing a variable to the trace, as Variable.toString() would.
+     * 
+     * @param tag The tag starting the line
+     * @param v The variable to describe
+     */
+    protected void traceVariable( String tag, Variable v ) {
+        if( !trace.isEnabled() )
+            return;
+        trace.print( tag ).print( "Variable: " ).print( v.identifier ).print( " <" ).print( v.type.name ).print( ">" ).println();
+    }
+
+    /**
+     * Open a new scope.  Variables added from now on belong to it until it is closed.
+     */
+    public void enterScope() {
+    }
+
+    /**
+     * Close the innermost scope, returning the variables declared in it which are still
+     * known, in the order they were declared.  The caller should remove each of them.
+     * 
+     * @return The variables going out of scope.
+     */
+    public List<Variable> exitScope() {
+        return new ArrayList<Variable>();
     }
 
     /**
@@ -66,7 +119,7 @@ public abstract class AbstractGenerate
     *
     **/
     public void commenceNonterminal( String name ) {
-        System.out.println( "rggBEGIN " + name );
+        trace.print( "rggBEGIN " ).print( name ).println();
     } // end of method commenceNonterminal
 
     /**
@@ -75,7 +128,7 @@ public abstract class AbstractGenerate
     *
     **/
     public void finishNonterminal( String name ) {
-        System.out.println( "rggEND " + name );
+        trace.print( "rggEND " ).print( name ).println();
     } // end of method finishNonterminal
 
     /**
@@ -85,11 +138,25 @@ public abstract class AbstractGenerate
     **/
     public void reportSuccess()
     {
-        System.out.println( "rggSUCCESS" );
+        trace.print( "rggSUCCESS" ).println();
     } // end of method reportSuccess
 
 
     /** Report an error to the user. */
     public abstract void reportError( Token token, String explanatoryMessage ) throws CompilationException;
 
+    /**
+     * Report an error found by the syntax analyser, held as a Diagnostic so that
+     * its message need only be built if it is shown.  By default the message is
+     * built and reported through reportError( Token, String ).
+     *
+     * @param diagnostic The error found.
+     * @throws CompilationException reporting the error.
+     */
+    public void reportError( Diagnostic diagnostic ) throws CompilationException {
+        Token token = new Token( diagnostic.getFound(), diagnostic.getFoundText(), diagnostic.getLine() );
+        token.column = diagnostic.getColumn();
+        reportError( token, diagnostic.getMessage() );
+    }
+
 } // end of class "AbstractGenerate"
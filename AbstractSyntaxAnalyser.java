@@ -11,6 +11,9 @@
  **/
 
 import java.io.* ;
+import java.util.ArrayList ;
+import java.util.Collections ;
+import java.util.List ;
 
 public abstract class AbstractSyntaxAnalyser
 {
@@ -18,8 +21,109 @@ public abstract class AbstractSyntaxAnalyser
 	LexicalAnalyser lex ;
 	/** A cache of the token to be processed next. */
 	Token nextToken ;
+	/** Tokens lexed in advance, read in place of lex if set; the one Token
+		nextToken is then filled in again for each token rather than created. */
+	TokenBuffer tokens = null;
+	/** Tokens read from lex beyond nextToken by peek, in a ring whose length
+		is a power of two, so that lookahead neither allocates nor lexes twice. */
+	private Token[] lookahead = new Token[4] ;
+	/** Index in lookahead of the token following nextToken. */
+	private int lookaheadHead = 0 ;
+	/** Number of tokens held in lookahead. */
+	private int lookaheadCount = 0 ;
 	/** A code generator, descendant of AbstractGenerate. */
 	Generate myGenerate = null;
+	/** Where the trace of each parse is written, if set by setTraceSink. */
+	TraceSink traceSink = null;
+	/** Where the trace of the current parse is written. Unless a sink has been
+		set this is a buffer owned by this analyser, written to standard output
+		in one piece when the parse ends, so concurrent compilations in the same
+		JVM never interleave or contend line by line. */
+	TraceSink trace = null;
+	/** Whether terminals and non-terminals are reported to the generator, or the input only recognised. */
+	boolean tracing = true;
+	/** Whether the parser carries on after an error to find any more, set by setRecovery. */
+	boolean recovering = false;
+	/** The errors found by the current parse, in the order they were found. */
+	final List<CompilationException> errors = new ArrayList<CompilationException>();
+	/** Number of tokens read by the current parse. */
+	int tokensRead = 0;
+	/** Value of tokensRead when the parser resumed after the last error. */
+	int resumedAt = 0;
+	/** Value of tokensRead when the last error was recorded, which marks the token it was found at. */
+	int errorAt = 0;
+
+	/** Number of tokens to read after resuming from an error before another
+		error is believed rather than taken to follow from the last one. */
+	static final int RESUME_TOKENS = 3;
+
+	/** Sets where the trace of subsequent parses is written, such as a buffered
+		writer, an in-memory buffer or TraceSink.NULL to discard it.
+
+	  @param sink The sink to write the trace to.
+	*/
+	public void setTraceSink( TraceSink sink )
+	{
+		traceSink = sink ;
+	} // end of method setTraceSink
+
+	/** Sets whether subsequent parses carry on after an error, skipping to
+		the end of the statement it was found in, so that one parse finds
+		every error in the input rather than only the first.  Every error
+		found is written to the verdict in turn.
+
+	  @param recover true to carry on after errors, false to stop at the first.
+	*/
+	public void setRecovery( boolean recover )
+	{
+		recovering = recover ;
+	} // end of method setRecovery
+
+	/** Gets the errors found by the last parse: at most one unless recovering.
+
+	  @return the errors, in the order they were found.
+	*/
+	public List<CompilationException> getErrors()
+	{
+		return Collections.unmodifiableList( errors ) ;
+	} // end of method getErrors
+
+	/** Gets the diagnostics of the errors found by the last parse, for tools
+		which want each error's code, position and symbols rather than its
+		message.
+
+	  @return the diagnostics, in the order the errors were found.
+	*/
+	public List<Diagnostic> getDiagnostics()
+	{
+		List<Diagnostic> diagnostics = new ArrayList<Diagnostic>( errors.size() ) ;
+		for( CompilationException ex : errors )
+		{
+			Diagnostic diagnostic = ex.getDiagnostic() ;
+			if( diagnostic != null )
+				diagnostics.add( diagnostic ) ;
+		}
+		return diagnostics ;
+	} // end of method getDiagnostics
+
+	/** Records an error caught at a recovery point of the current parse,
+		unless it was found at the same token as the last one, or too few
+		tokens have been read since resuming after the last one, when it is
+		most likely a consequence of that error rather than a new one.
+		The error which ends a parse is always recorded unless it is found
+		at the same token as the last one.
+
+	  @param ex The error.
+	  @return true if the error was recorded.
+	*/
+	boolean recordError( CompilationException ex )
+	{
+		if( !errors.isEmpty() && (tokensRead == errorAt || tokensRead - resumedAt < RESUME_TOKENS) )
+			return false ;
+		errors.add( ex ) ;
+		errorAt = tokensRead ;
+		return true ;
+	} // end of method recordError
 
 	/** Begin processing the first (top level) token.*/
 	public abstract void _statementPart_() throws IOException, CompilationException;
@@ -27,27 +131,195 @@ public abstract class AbstractSyntaxAnalyser
 	/** Accept a token based on context. Requires implementation. */
 	public abstract void acceptTerminal(int symbol) throws IOException, CompilationException;
 
+	/** Reads the next token, from the token buffer if there is one and
+		otherwise from the lexical analyser.
+
+	  @throws IOException in the event that the input can no longer be read.
+	  @return the token to be processed next.
+	*/
+	Token readToken() throws IOException
+	{
+		tokensRead++ ;
+		if( tokens != null )
+			return tokens.next( nextToken ) ;
+		if( lookaheadCount == 0 )
+			return lex.getNextToken() ;
+		Token token = lookahead[lookaheadHead] ;
+		lookahead[lookaheadHead] = null ;
+		lookaheadHead = (lookaheadHead + 1) & (lookahead.length - 1) ;
+		lookaheadCount-- ;
+		return token ;
+	} // end of method readToken
+
+	/** Looks ahead of the token to be processed next without consuming
+		anything, so that the parser can choose between alternatives which
+		share a first symbol.  Tokens read from the lexical analyser to look
+		ahead are kept until they are consumed, so each is lexed once.
+
+	  @param k How many tokens beyond nextToken to look, 0 for nextToken itself.
+	  @throws IOException in the event that the input can no longer be read.
+	  @return the symbol of that token, as a class constant from Token; the end of file beyond the last token.
+	*/
+	public int peek( int k ) throws IOException
+	{
+		if( k == 0 )
+			return nextToken.symbol ;
+		if( tokens != null )
+			return tokens.peek( k - 1 ) ;
+
+		int mask = lookahead.length - 1 ;
+		int last = nextToken.symbol ;
+		if( lookaheadCount > 0 )
+			last = lookahead[(lookaheadHead + lookaheadCount - 1) & mask].symbol ;
+		while( lookaheadCount < k && last != Token.eofSymbol )
+		{
+			if( lookaheadCount == lookahead.length )
+			{
+				// Unwrap the ring into one twice the size
+				Token[] larger = new Token[2 * lookahead.length] ;
+				for( int i = 0 ; i < lookaheadCount ; i++ )
+					larger[i] = lookahead[(lookaheadHead + i) & mask] ;
+				lookahead = larger ;
+				lookaheadHead = 0 ;
+				mask = lookahead.length - 1 ;
+			}
+			Token token = lex.getNextToken() ;
+			lookahead[(lookaheadHead + lookaheadCount) & mask] = token ;
+			lookaheadCount++ ;
+			last = token.symbol ;
+		}
+		if( lookaheadCount < k )
+			return Token.eofSymbol ;
+		return lookahead[(lookaheadHead + k - 1) & mask].symbol ;
+	} // end of method peek
+
+	/** Discards any tokens read ahead, as when the lexical analyser is moved
+		to another position or another input. */
+	void discardLookahead()
+	{
+		for( ; lookaheadCount > 0 ; lookaheadCount-- )
+		{
+			lookahead[lookaheadHead] = null ;
+			lookaheadHead = (lookaheadHead + 1) & (lookahead.length - 1) ;
+		}
+		lookaheadHead = 0 ;
+	} // end of method discardLookahead
+
 	/** Parses the given PrintStream with this instance's LexicalAnalyser.
 		
 	  @param ps The PrintStream object to read tokens from.
 	  @throws IOException in the event that the PrintStream object can no longer read.
+	  @return true if the input compiled, false if a compilation error was reported.
 	*/
-	public void parse( PrintStream ps ) throws IOException
+	public boolean parse( PrintStream ps ) throws IOException
 	{
-		ps.println( lex.getFilename() );
-		myGenerate = new Generate();
+		TraceSink sink = (traceSink != null) ? traceSink : TraceSink.inMemory();
 		try {
-			nextToken = lex.getNextToken() ;
-			_statementPart_() ;
-			acceptTerminal(Token.eofSymbol) ;
-			myGenerate.reportSuccess() ;
-			ps.println( "OK\n" );
+			return parse( new Generate( sink ), ps ) ;
 		}
-		catch( CompilationException ex )
+		finally
 		{
-			ps.println( "Compilation Exception" );
-			ps.println( ex.toTraceString() );
+			if( traceSink == null )
+				System.out.print( sink.toString() );
+		}
+	} // end of method parse
+
+	/** Parses this instance's input, reporting to the given generator rather
+		than a new Generate, so that a subclass of Generate can act on what is
+		parsed, such as TreeGenerate building a parse tree.  The trace is
+		written to the generator's own trace sink.
+
+	  @param generate The generator to report terminals, non-terminals, variables and errors to.
+	  @param ps The PrintStream to write the verdict to.
+	  @throws IOException in the event that the input can no longer be read.
+	  @return true if the input compiled, false if a compilation error was reported.
+	*/
+	public boolean parse( Generate generate, PrintStream ps ) throws IOException
+	{
+		ps.println( lex.getFilename() );
+		trace = generate.getTraceSink();
+		myGenerate = generate;
+		errors.clear() ;
+		tokensRead = 0 ;
+		resumedAt = 0 ;
+		errorAt = 0 ;
+		try {
+			try {
+				if( tokens != null )
+					tokens.setPosition( 0 ) ;
+				discardLookahead() ;
+				nextToken = readToken() ;
+				_statementPart_() ;
+				acceptTerminal(Token.eofSymbol) ;
+			}
+			catch( CompilationException ex )
+			{
+				// The parse cannot go on, so this error is reported however soon it follows the last,
+				// unless recovery stopped at the very token the last error was found at
+				if( errors.isEmpty() || tokensRead != errorAt )
+					errors.add( ex ) ;
+			}
+
+			if( errors.isEmpty() )
+			{
+				myGenerate.reportSuccess() ;
+				ps.println( "OK\n" );
+				return true;
+			}
+			for( CompilationException ex : errors )
+			{
+				ps.println( "Compilation Exception" );
+				ps.println( ex.toTraceString( trace ) );
+			}
 			ps.println( "STOP\n" );
+			return false;
 		}
+		finally
+		{
+			trace.flush();
+		}
+	} // end of method parse
+
+	/** Parses the input of another LexicalAnalyser, such as one created over
+		source held in memory by LexicalAnalyser.fromSource, so that one analyser
+		can be reused for many sources.
+
+	  @param source The lexical analyser to read tokens from.
+	  @param ps The PrintStream to write the verdict to.
+	  @throws IOException in the event that the input can no longer be read.
+	  @return true if the input compiled, false if a compilation error was reported.
+	*/
+	public boolean parse( LexicalAnalyser source, PrintStream ps ) throws IOException
+	{
+		lex = source ;
+		tokens = null ;
+		return parse( ps ) ;
 	} // end of method parse
+
+	/** Recognises the input without producing any trace: the generator is not
+		told about terminals or non-terminals at all, only about variables and
+		errors.  The verdict, and the location of any error, is still written
+		to the given PrintStream.  Tracing, and any sink set by setTraceSink,
+		apply again to later parses.
+
+	  @param ps The PrintStream to write the verdict to.
+	  @throws IOException in the event that the input can no longer be read.
+	  @return true if the input compiled, false if a compilation error was reported.
+	*/
+	public boolean recognise( PrintStream ps ) throws IOException
+	{
+		// Only this parse is trace-free: later parses trace as before, to any sink set
+		boolean wasTracing = tracing ;
+		TraceSink wasTraceSink = traceSink ;
+		tracing = false ;
+		traceSink = TraceSink.NULL ;
+		try {
+			return parse( ps ) ;
+		}
+		finally
+		{
+			tracing = wasTracing ;
+			traceSink = wasTraceSink ;
+		}
+	} // end of method recognise
 } // end of class AbstractSyntaxAnalyser
@@ -0,0 +1,504 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Code: Benchmark Class   Benchmark.java
+ *
+ * Timing driver for the hot paths of the compiler, run with "make bench" or
+ * "java Benchmark [name ...]" to run only the named benchmarks
+ * (lexer, incremental, parse, symbols, errors, trace, recognise, indent, stress).
+ * Each benchmark is warmed up before being measured and reports the mean time and the mean
+ * number of bytes allocated per operation, so that regressions in either can be seen.
+ * Trace output written to System.out is discarded while benchmarks run.
+ */
+public class Benchmark {
+
+  private static final int WARMUP_ROUNDS = 5;    /** Rounds run before measuring **/
+  private static final int MEASURED_ROUNDS = 10; /** Rounds measured and averaged **/
+
+  private static PrintStream report;  /** Where results are written **/
+
+  /** Counts the bytes allocated by the benchmarking thread **/
+  private static final com.sun.management.ThreadMXBean THREADS =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  /**
+   * A unit of work to be timed.
+   */
+  private interface Task {
+    void run() throws Exception;
+  }
+
+  /**
+   * Runs the named benchmarks, or all of them if none are named.
+   * @param args the names of the benchmarks to run.
+   * @throws Exception if a benchmark fails.
+   */
+  public static void main(String[] args) throws Exception {
+    report = System.out;
+    System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+    List<String> names = new ArrayList<String>(List.of(args));
+    if (names.isEmpty() || names.contains("lexer")) {
+      lexer();
+    }
+    if (names.isEmpty() || names.contains("incremental")) {
+      incremental();
+    }
+    if (names.isEmpty() || names.contains("parse")) {
+      parse();
+    }
+    if (names.isEmpty() || names.contains("symbols")) {
+      symbols();
+    }
+    if (names.isEmpty() || names.contains("errors")) {
+      errors();
+    }
+    if (names.isEmpty() || names.contains("trace")) {
+      trace();
+    }
+    if (names.isEmpty() || names.contains("recognise")) {
+      recognise();
+    }
+    if (names.isEmpty() || names.contains("indent")) {
+      indent();
+    }
+    if (names.isEmpty() || names.contains("stress")) {
+      stress();
+    }
+  }
+
+  /**
+   * Times the lexical analyser over generated programs of increasing size, per token,
+   * reading line by line, from a mapped file, through the allocation-free cursor and into a token buffer.
+   * @throws Exception if a benchmark fails.
+   */
+  private static void lexer() throws Exception {
+    for (int n : new int[] { 1000, 10000, 100000 }) {
+      String program = syntheticProgram(n);
+      File file = writeProgram(program);
+      int tokens = countTokens(LexicalAnalyser.fromSource("tokens", program));
+
+      measure("lexer: getNextToken, reader, " + n + " statements", tokens, () -> {
+        drain(new LexicalAnalyser(file.getPath()));
+      });
+      measure("lexer: getNextToken, mapped, " + n + " statements", tokens, () -> {
+        drain(LexicalAnalyser.mapFile(file.getPath()));
+      });
+      measure("lexer: advance, in memory, " + n + " statements", tokens, () -> {
+        countTokens(LexicalAnalyser.fromSource("tokens", program));
+      });
+      measure("lexer: token buffer, in memory, " + n + " statements", tokens, () -> {
+        new TokenBuffer("tokens", program);
+      });
+    }
+  }
+
+  /**
+   * Reads every token from a lexical analyser with getNextToken().
+   * @param lex the lexical analyser to drain.
+   * @throws IOException if the source cannot be read.
+   */
+  private static void drain(LexicalAnalyser lex) throws IOException {
+    while (lex.getNextToken().symbol != Token.eofSymbol) {
+    }
+  }
+
+  /**
+   * Counts the tokens of a lexical analyser with advance().
+   * @param lex the lexical analyser to read.
+   * @return the number of tokens, including the end of file.
+   * @throws IOException if the source cannot be read.
+   */
+  private static int countTokens(LexicalAnalyser lex) throws IOException {
+    int tokens = 1;
+    while (lex.advance() != Token.eofSymbol) {
+      tokens++;
+    }
+    return tokens;
+  }
+
+  /**
+   * Times bringing the tokens, and the verdict, of generated programs of increasing size up to date
+   * after an edit in the middle, incrementally and by scanning or recognising the whole program again.
+   * @throws Exception if a benchmark fails.
+   */
+  private static void incremental() throws Exception {
+    for (int n : new int[] { 1000, 10000, 100000 }) {
+      String program = syntheticProgram(n);
+      IncrementalLexer lexer = new IncrementalLexer("incremental", program);
+      int line = program.indexOf('\n', program.length() / 2) + 1;
+      int end = program.indexOf('\n', line);
+      String edited = "  x := x + 1 ;";
+      String original = program.substring(line, end);
+
+      measure("incremental: edit one line, " + n + " statements", 2, () -> {
+        lexer.edit(line, end, edited);
+        lexer.edit(line, line + edited.length(), original);
+      });
+      measure("incremental: scan again, " + n + " statements", 1, () -> {
+        countTokens(LexicalAnalyser.fromSource("incremental", program));
+      });
+
+      // Change a number in the middle of the program and back, recognising it after each edit
+      IncrementalParser parser = new IncrementalParser("incremental", program);
+      parser.recognise(System.out);
+      IncrementalLexer tokens = parser.getTokens();
+      int number = tokens.findToken(program.length() / 2);
+      while (tokens.getSymbol(number) != Token.numberConstant) {
+        number++;
+      }
+      int start = tokens.getStart(number);
+      String digits = tokens.getText(number);
+      measure("incremental: reparse after edit, " + n + " statements", 2, () -> {
+        parser.edit(start, start + digits.length(), "7");
+        parser.recognise(System.out);
+        parser.edit(start, start + 1, digits);
+        parser.recognise(System.out);
+      });
+      measure("incremental: recognise again, " + n + " statements", 1, () -> {
+        new SyntaxAnalyser("incremental", program).recognise(System.out);
+      });
+    }
+  }
+
+  /**
+   * Times end-to-end parses of the Programs Folder corpus, and recognition of generated programs of increasing size,
+   * from source and from tokens already lexed, and building their parse trees.
+   * @throws Exception if a benchmark fails.
+   */
+  private static void parse() throws Exception {
+    List<File> corpus = corpus();
+    measure("parse: corpus, traced", corpus.size(), () -> {
+      for (File file : corpus) {
+        parse(file);
+      }
+    });
+    for (int n : new int[] { 1000, 10000, 100000 }) {
+      String program = syntheticProgram(n);
+      measure("parse: recognise, " + n + " statements", n, () -> {
+        new SyntaxAnalyser("synthetic", program).recognise(System.out);
+      });
+      measure("parse: build tree, " + n + " statements", n, () -> {
+        new SyntaxAnalyser("synthetic", program).parse(new TreeGenerate(), System.out);
+      });
+      TokenBuffer buffer = new TokenBuffer("synthetic", program);
+      SyntaxAnalyser buffered = new SyntaxAnalyser(buffer);
+      measure("parse: recognise from token buffer, " + n + " statements", n, () -> {
+        buffered.recognise(System.out);
+      });
+    }
+  }
+
+  /**
+   * Times the error path: an error deep inside nested expressions, so that every enclosing
+   * non-terminal wraps the exception, generated programs with an error, stopping at it and recovering
+   * from it to parse the rest, stray else and end tokens, which recovery must skip to find the errors
+   * after them, and the failing programs of the corpus.
+   * @throws Exception if a benchmark fails.
+   */
+  private static void errors() throws Exception {
+    for (int depth : new int[] { 10, 100 }) {
+      StringBuilder program = new StringBuilder("begin\n  x := ");
+      for (int i = 0; i < depth; i++) {
+        program.append("(1 + ");
+      }
+      program.append("undeclared");
+      for (int i = 0; i < depth; i++) {
+        program.append(")");
+      }
+      program.append("\nend\n");
+      String source = program.toString();
+      measure("errors: error under " + depth + " parentheses, recognised", 1, () -> {
+        new SyntaxAnalyser("errors", source).recognise(System.out);
+      });
+    }
+
+    for (int n : new int[] { 1000, 10000 }) {
+      ProgramGenerator generator = new ProgramGenerator(n, 3, n);
+      List<String> invalid = new ArrayList<String>();
+      for (int i = 0; i < 10; i++) {
+        invalid.add(generator.generateInvalid());
+      }
+      measure("errors: generated, one error in " + n + " statements", invalid.size(), () -> {
+        for (String source : invalid) {
+          new SyntaxAnalyser("errors", source).recognise(System.out);
+        }
+      });
+      measure("errors: generated, one error in " + n + " statements, recovering", invalid.size(), () -> {
+        for (String source : invalid) {
+          SyntaxAnalyser syntaxAnalyser = new SyntaxAnalyser("errors", source);
+          syntaxAnalyser.setRecovery(true);
+          syntaxAnalyser.recognise(System.out);
+        }
+      });
+    }
+
+    String stray = "begin\n  x := 1 ;\n  else x := 2 ;\n  y := undeclared ;\n  x := 3 ;\n  end ;\n"
+        + "  z := alsoUndeclared\nend\n";
+    measure("errors: stray else and end, recovering", 1, () -> {
+      checkErrors(stray, Diagnostic.Code.EXPECTED_STATEMENT, Diagnostic.Code.UNDECLARED_VARIABLE,
+          Diagnostic.Code.EXPECTED_STATEMENT, Diagnostic.Code.UNDECLARED_VARIABLE);
+    });
+
+    List<String> failing = new ArrayList<String>();
+    for (File file : corpus()) {
+      if (!new SyntaxAnalyser(file.getPath()).recognise(System.out)) {
+        failing.add(Files.readString(file.toPath()));
+      }
+    }
+    measure("errors: failing corpus programs, traced", failing.size(), () -> {
+      for (String source : failing) {
+        new SyntaxAnalyser("errors", source).parse(System.out);
+      }
+    });
+  }
+
+  /**
+   * Recognises a program recovering from errors, failing unless exactly the given errors are found, in order.
+   * @param source the source text.
+   * @param expected the kinds of the errors expected.
+   * @throws IOException if an IOException occured.
+   */
+  private static void checkErrors(String source, Diagnostic.Code... expected) throws IOException {
+    SyntaxAnalyser syntaxAnalyser = new SyntaxAnalyser("errors", source);
+    syntaxAnalyser.setRecovery(true);
+    syntaxAnalyser.recognise(System.out);
+    List<Diagnostic.Code> found = new ArrayList<Diagnostic.Code>();
+    for (Diagnostic diagnostic : syntaxAnalyser.getDiagnostics()) {
+      found.add(diagnostic.getCode());
+    }
+    if (!found.equals(List.of(expected))) {
+      throw new IllegalStateException("recovering found " + found + ", expected " + List.of(expected));
+    }
+  }
+
+  /**
+   * Generates a valid program of the given number of top level statements, nested up to three deep.
+   * @param statements the number of top level statements.
+   * @return the source text.
+   */
+  private static String syntheticProgram(int statements) {
+    return new ProgramGenerator(statements, 3, statements).generate();
+  }
+
+  /**
+   * Times symbol table lookups, and parses of programs declaring many distinct variables.
+   * @throws Exception if a benchmark fails.
+   */
+  private static void symbols() throws Exception {
+    for (int n : new int[] { 1000, 10000, 100000 }) {
+      Generate generate = new Generate();
+      String[] identifiers = new String[n];
+      for (int i = 0; i < n; i++) {
+        identifiers[i] = "v" + i;
+        generate.addVariable(new Variable(identifiers[i], Variable.Type.NUMBER));
+      }
+      measure("symbols: getVariable, " + n + " variables", n, () -> {
+        for (String identifier : identifiers) {
+          if (generate.getVariable(identifier) == null) {
+            throw new IllegalStateException(identifier);
+          }
+        }
+      });
+    }
+
+    for (int n : new int[] { 500, 2000 }) {
+      StringBuilder program = new StringBuilder("begin\n  v0 := 0");
+      for (int i = 1; i < n; i++) {
+        program.append(" ;\n  v").append(i).append(" := v").append(i - 1).append(" + 1");
+      }
+      program.append("\nend\n");
+      File file = writeProgram(program);
+      measure("symbols: parse, " + n + " distinct variables", 1, () -> parse(file));
+    }
+  }
+
+  /**
+   * Times parses of the Programs Folder corpus with each kind of trace sink.
+   * @throws Exception if a benchmark fails.
+   */
+  private static void trace() throws Exception {
+    List<File> corpus = corpus();
+    measure("trace: corpus, unbuffered PrintStream", corpus.size(), () -> {
+      for (File file : corpus) {
+        parse(file, TraceSink.printStream(System.out));
+      }
+    });
+    measure("trace: corpus, buffered", corpus.size(), () -> {
+      for (File file : corpus) {
+        parse(file, TraceSink.buffered(System.out));
+      }
+    });
+    measure("trace: corpus, in memory", corpus.size(), () -> {
+      for (File file : corpus) {
+        parse(file, TraceSink.inMemory());
+      }
+    });
+    measure("trace: corpus, null", corpus.size(), () -> {
+      for (File file : corpus) {
+        parse(file, TraceSink.NULL);
+      }
+    });
+  }
+
+  /**
+   * Compares full tracing with recognition only, on the corpus and on a long generated program.
+   * @throws Exception if a benchmark fails.
+   */
+  private static void recognise() throws Exception {
+    List<File> corpus = corpus();
+    measure("recognise: corpus, traced", corpus.size(), () -> {
+      for (File file : corpus) {
+        parse(file, TraceSink.buffered(System.out));
+      }
+    });
+    measure("recognise: corpus, recognised", corpus.size(), () -> {
+      for (File file : corpus) {
+        new SyntaxAnalyser(file.getPath()).recognise(System.out);
+      }
+    });
+
+    StringBuilder program = new StringBuilder("begin\n  x := 0");
+    for (int i = 1; i < 2000; i++) {
+      program.append(" ;\n  while x < 10 loop x := (x + 1) * 2 end loop");
+    }
+    program.append("\nend\n");
+    File file = writeProgram(program);
+    measure("recognise: 2000 statements, traced", 1, () -> parse(file, TraceSink.buffered(System.out)));
+    measure("recognise: 2000 statements, recognised", 1, () -> new SyntaxAnalyser(file.getPath()).recognise(System.out));
+  }
+
+  /**
+   * Times traced parses of deeply parenthesised expressions, where indentation dominates the trace.
+   * @throws Exception if a benchmark fails.
+   */
+  private static void indent() throws Exception {
+    for (int depth : new int[] { 100, 1000 }) {
+      StringBuilder program = new StringBuilder("begin\n  x := ");
+      for (int i = 0; i < depth; i++) {
+        program.append("(1 + ");
+      }
+      program.append("1");
+      for (int i = 0; i < depth; i++) {
+        program.append(")");
+      }
+      program.append("\nend\n");
+      File file = writeProgram(program);
+      measure("indent: " + depth + " nested parentheses, traced", 1, () -> parse(file, TraceSink.buffered(System.out)));
+    }
+  }
+
+  /**
+   * Recognises generated programs of a million statements, with and without an error, on the default stack,
+   * failing if either gets the wrong verdict or overflows the stack.
+   * @throws Exception if a benchmark fails.
+   */
+  private static void stress() throws Exception {
+    int n = 1000000;
+    // Nested only one deep, so that the source of a million statements stays within the default heap
+    ProgramGenerator generator = new ProgramGenerator(n, 1, n);
+    String valid = generator.generate();
+    String invalid = generator.generateInvalid();
+    measure("stress: recognise, " + n + " statements", n, () -> {
+      checkVerdict(valid, true);
+    });
+    measure("stress: recognise, one error in " + n + " statements", n, () -> {
+      checkVerdict(invalid, false);
+    });
+  }
+
+  /**
+   * Recognises a program, failing if it does not get the expected verdict or overflows the stack.
+   * @param source the source text.
+   * @param expected true if the program is valid.
+   * @throws IOException if an IOException occured.
+   */
+  private static void checkVerdict(String source, boolean expected) throws IOException {
+    boolean verdict;
+    try {
+      verdict = new SyntaxAnalyser("stress", source).recognise(System.out);
+    } catch (StackOverflowError e) {
+      throw new IllegalStateException("stack overflow recognising a long program", e);
+    }
+    if (verdict != expected) {
+      throw new IllegalStateException("recognised a long program as " + (verdict ? "valid" : "invalid"));
+    }
+  }
+
+  /**
+   * Lists the programs in the Programs Folder, as Compile would find them.
+   * @return the program files.
+   */
+  private static List<File> corpus() {
+    List<File> files = new ArrayList<File>();
+    for (int i = 0; ; i++) {
+      File file = new File("Programs Folder" + File.separator + "program" + i);
+      if (!file.exists()) {
+        return files;
+      }
+      files.add(file);
+    }
+  }
+
+  /**
+   * Parses a file with a fresh syntax analyser writing its trace to the given sink, discarding the results.
+   * @param file the program to parse.
+   * @param sink the sink to write the trace to.
+   * @throws IOException if the file cannot be read.
+   */
+  private static void parse(File file, TraceSink sink) throws IOException {
+    SyntaxAnalyser syn = new SyntaxAnalyser(file.getPath());
+    syn.setTraceSink(sink);
+    syn.parse(System.out);
+  }
+
+  /**
+   * Parses a file with a fresh syntax analyser, discarding the results.
+   * @param file the program to parse.
+   * @throws IOException if the file cannot be read.
+   */
+  private static void parse(File file) throws IOException {
+    new SyntaxAnalyser(file.getPath()).parse(System.out);
+  }
+
+  /**
+   * Writes a generated program to a temporary file, deleted on exit.
+   * @param program the source text.
+   * @return the file holding the program.
+   * @throws IOException if the file cannot be written.
+   */
+  private static File writeProgram(CharSequence program) throws IOException {
+    File file = File.createTempFile("benchmark", ".txt");
+    file.deleteOnExit();
+    Files.writeString(file.toPath(), program);
+    return file;
+  }
+
+  /**
+   * Warms up then times a task, reporting the mean time and allocation per operation.
+   * @param name the name to report.
+   * @param operations the number of operations performed by one run of the task.
+   * @param task the work to time.
+   * @throws Exception if the task fails.
+   */
+  private static void measure(String name, long operations, Task task) throws Exception {
+    for (int i = 0; i < WARMUP_ROUNDS; i++) {
+      task.run();
+    }
+    long allocated = THREADS.getCurrentThreadAllocatedBytes();
+    long start = System.nanoTime();
+    for (int i = 0; i < MEASURED_ROUNDS; i++) {
+      task.run();
+    }
+    double nanos = (double) (System.nanoTime() - start) / MEASURED_ROUNDS / operations;
+    double bytes = (double) (THREADS.getCurrentThreadAllocatedBytes() - allocated) / MEASURED_ROUNDS / operations;
+    report.printf("%-55s %14.1f ns/op %12.1f B/op%n", name, nanos, bytes);
+  }
+}
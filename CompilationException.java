@@ -12,18 +12,54 @@
 
 public class CompilationException extends Exception
 {
-	private static final int MAX_TRACE_DEPTH = 20;
+	/** The most causes toTraceString() shows. */
+	static final int MAX_TRACE_DEPTH = 20;
 
 	private final int lineNumber;
 
+	/** The error reported, if this exception reports one rather than wrapping a cause. */
+	private final Diagnostic diagnostic;
+
 	public CompilationException( String message, int lineNumber ) {
-		super( message );
-		this.lineNumber = lineNumber;
+		this( message, lineNumber, null );
 	}
 
+	/** Wraps a cause with the non-terminal being parsed when it was thrown.
+
+	  The exception is stackless: parse errors are reported through
+	  toTraceString() and the chain of causes, never through a Java stack
+	  trace, so each wrapper skips the cost of fillInStackTrace().
+	 */
 	public CompilationException( String message, int lineNumber, CompilationException cause ) {
-		super( message, cause );
+		super( message, cause, false, false );
 		this.lineNumber = lineNumber;
+		this.diagnostic = null;
+	}
+
+	/** Reports an error found by the syntax analyser.  The message is the
+	  diagnostic's, only built if it is asked for.
+	 */
+	public CompilationException( Diagnostic diagnostic ) {
+		super( null, null, false, false );
+		this.lineNumber = diagnostic.getLine();
+		this.diagnostic = diagnostic;
+	}
+
+	@Override
+	public String getMessage() {
+		return (diagnostic != null) ? diagnostic.getMessage() : super.getMessage();
+	}
+
+	/** Gets the error reported by this exception, or by the innermost of the
+	  causes it wraps.
+
+	  @return the diagnostic, or null if the error was reported only as a message.
+	 */
+	public Diagnostic getDiagnostic() {
+		Throwable err = this;
+		while( err.getCause() != null )
+			err = err.getCause();
+		return (err instanceof CompilationException) ? ((CompilationException)err).diagnostic : null;
 	}
 
 	public int getLineNumber() {
@@ -31,6 +67,17 @@ public class CompilationException extends Exception
 	}
 
 	public String toTraceString() {
+		return toTraceString( TraceSink.printStream( System.out ) );
+	}
+
+	/** Builds the trace of this exception and its causes, one line each.
+	  The trace so far is also written to the given sink whenever a further
+	  cause follows.
+
+	  @param progress Where the partial traces are written.
+	  @return the full trace.
+	 */
+	public String toTraceString( TraceSink progress ) {
 		StringBuffer buffer = new StringBuffer();
 		Throwable err = this;
 		int maxDepth = MAX_TRACE_DEPTH;
@@ -45,7 +92,7 @@ public class CompilationException extends Exception
 			err = err.getCause();
 
 			if( err != null )
-				System.out.println( buffer.toString() );
+				progress.print( buffer.toString() ).println();
 		}
 
 		if( maxDepth < 1 )
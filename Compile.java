@@ -2,20 +2,88 @@
 /**
  *
  * Main Driver program for 254 exercise.
- * 
+ *
  * This class has been provided to students
  *
+ * Run with "-threads N" to compile the programs on N threads (0 for one per
+ * processor); results are still written in program order.  Run with
+ * "-input PATH" to compile every file in a directory, or every file matching
+ * a glob such as "Programs Folder/program*" or "tests/**.txt", instead of
+ * probing for program0, program1, ... in the Programs Folder.
+ *
+ * Run with "-recover" to carry on after an error in a statement, so that
+ * each program's verdict lists every error found rather than only the first.
+ *
+ * Run with "-json FILE" to also write every error found to FILE as JSON,
+ * one object per line, with its code, position and the symbols found and
+ * expected, for tools to read.
+ *
+ * Run with "-server PORT" to stay resident, so that the JVM is started and
+ * warmed up once for many compilations.  The server listens on the loopback
+ * interface and serves each connection on its own thread, up to as many
+ * connections at once as "-threads N" gives, or one per processor if it is
+ * not given or is 0.  A connection sends any number of requests, one per line:
+ *
+ *   FILE path        compile the named file
+ *   SOURCE name      compile the source text on the following lines, up to a line holding only "."
+ *   QUIT             close the connection
+ *
+ * Each request is answered with its res.txt verdict followed by a line holding only ".".
+ * As in SMTP, a line of source or of an answer which begins with "." is sent
+ * with another "." in front of it, which the receiver removes, so that no line
+ * of the text itself can be taken for the end of it.
+ *
  * @Author: Roger Garside, John Mariani, John Vidler
  *
  *
  **/
 
 import java.io.* ;
+import java.net.* ;
+import java.nio.charset.StandardCharsets ;
+import java.nio.file.* ;
+import java.util.ArrayDeque ;
+import java.util.ArrayList ;
+import java.util.List ;
+import java.util.concurrent.* ;
+import java.util.stream.Stream ;
 
 public class Compile {
 
 	public static String fileName;
 
+	/** The number of threads to compile on, 0 for one per processor, or -1 if not given;
+		1, or not giving it, compiles each program in turn on the main thread. */
+	private int threads = -1;
+	/** A directory or glob naming the programs to compile, or null to probe the Programs Folder. */
+	private String input = null;
+	/** Whether to carry on after errors to report all of them. */
+	private boolean recover = false;
+	/** The file to write diagnostics to as JSON, or null. */
+	private String jsonFile = null;
+	/** The stream writing diagnostics as JSON, once opened. */
+	private PrintStream json = null;
+	/** The port to serve compilations on, or -1 to compile once and exit. */
+	private int port = -1;
+	/** Counts of the programs which compiled and which failed. */
+	private int passed = 0,
+			failed = 0;
+
+	/** The trace and verdict of one program compiled in isolation. */
+	private static class Result {
+		final String trace;
+		final String verdict;
+		final boolean compiled;
+		final List<Diagnostic> diagnostics;
+
+		Result( String trace, String verdict, boolean compiled, List<Diagnostic> diagnostics ) {
+			this.trace = trace;
+			this.verdict = verdict;
+			this.compiled = compiled;
+			this.diagnostics = diagnostics;
+		}
+	}
+
 	/**
 	 *
 	 * main
@@ -30,36 +98,333 @@ public class Compile {
 		PrintStream out = null;
 		String outputFile = new String( "res.txt" );
 		boolean goon = true;
+		List<String> fileNames = new ArrayList<String>();
 
 		try {
 			out = new PrintStream( new FileOutputStream(outputFile) );
+			if( jsonFile != null )
+				json = new PrintStream( new BufferedOutputStream( new FileOutputStream( jsonFile ) ) );
 		} catch( Exception e ) {
 			System.out.println("unable to open output file "+e);
 			System.exit(0);
 		}
 
+		if( input != null ) {
+			compileAll( listInput( input ), out );
+			System.out.println();
+			System.out.println( "rggCOUNT " + (passed + failed) + " processed, " + passed + " passed, " + failed + " failed" );
+			System.out.println("rggFINISH") ;
+			out.flush();out.close();
+			if( json != null ) json.close();
+			System.exit(exitFlag) ;
+		}
+
 		while( goon ) {
 			fileNumber++ ;
 			fileName = prefix + fileNumber;
 			goon = ((new File(fileName)).exists());
-			if( goon ) {
-				System.out.println();
-				System.out.println( "rggFILE " + fileName );
-
-				SyntaxAnalyser syn = new SyntaxAnalyser(fileName) ;
-				syn.parse( out ) ;
-			} else System.out.println(fileName+" does not exist");
+			if( goon ) fileNames.add( fileName );
 		}
 
+		compileAll( fileNames, out );
+		System.out.println(fileName+" does not exist");
+
 		System.out.println() ;
 		System.out.println("rggFINISH") ;
 		out.flush();out.close();
+		if( json != null ) json.close();
 		System.exit(exitFlag) ;
 	} // end of main method
 
+	/**
+	 * Serves compilations on a loopback port until the process is stopped.
+	 *
+	 * @throws IOException if the port cannot be listened on.
+	 */
+	private void serve() throws IOException {
+		int poolSize = (threads > 0) ? threads : Runtime.getRuntime().availableProcessors();
+		ExecutorService pool = Executors.newFixedThreadPool( poolSize );
+		try( ServerSocket server = new ServerSocket( port, 50, InetAddress.getLoopbackAddress() ) ) {
+			System.out.println( "rggSERVER listening on " + server.getLocalSocketAddress() );
+			while( true ) {
+				Socket client = server.accept();
+				pool.execute( () -> serveClient( client ) );
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	} // end of method serve
+
+	/**
+	 * Answers the requests sent on one connection until it is closed or sends QUIT.
+	 * Only the verdict is wanted, so each program is recognised without a trace.
+	 *
+	 * @param client The connection to serve.
+	 */
+	private static void serveClient( Socket client ) {
+		try( Socket socket = client;
+				BufferedReader in = new BufferedReader( new InputStreamReader( socket.getInputStream(), StandardCharsets.UTF_8 ) );
+				PrintStream out = new PrintStream( new BufferedOutputStream( socket.getOutputStream() ), false, "UTF-8" ) ) {
+			String request;
+			while( (request = in.readLine()) != null && !request.equals( "QUIT" ) ) {
+				ByteArrayOutputStream answer = new ByteArrayOutputStream();
+				PrintStream verdict = new PrintStream( answer, false, "UTF-8" );
+				if( request.startsWith( "FILE " ) ) {
+					String name = request.substring( 5 );
+					LexicalAnalyser lex = null;
+					try {
+						lex = LexicalAnalyser.mapFile( name );
+					} catch( IOException e ) {
+						verdict.println( "rggERROR unable to read " + name + ": " + e );
+					}
+					if( lex != null )
+						new SyntaxAnalyser( lex ).recognise( verdict );
+				} else if( request.startsWith( "SOURCE " ) ) {
+					StringBuilder source = new StringBuilder();
+					String line;
+					while( (line = in.readLine()) != null && !line.equals( "." ) ) {
+						// A leading "." was doubled by the client
+						if( line.startsWith( "." ) )
+							line = line.substring( 1 );
+						source.append( line ).append( '\n' );
+					}
+					new SyntaxAnalyser( request.substring( 7 ), source ).recognise( verdict );
+				} else
+					verdict.println( "rggERROR unknown request: " + request );
+				verdict.flush();
+				BufferedReader lines = new BufferedReader( new StringReader( answer.toString( "UTF-8" ) ) );
+				String line;
+				while( (line = lines.readLine()) != null ) {
+					if( line.startsWith( "." ) )
+						out.print( "." );
+					out.println( line );
+				}
+				out.println( "." );
+				out.flush();
+			}
+		} catch( IOException e ) {
+			System.err.println( "connection failed: " + e );
+		}
+	} // end of method serveClient
+
+	/**
+	 * Lists the programs named by a directory or a glob, enumerating the file
+	 * system once.  A directory names every regular file directly inside it,
+	 * other than hidden ones.
+	 * Otherwise the path is split at the first segment holding a glob
+	 * character; a single-segment pattern is matched with a DirectoryStream,
+	 * a longer one by walking the tree below the fixed part.  Programs are
+	 * sorted by name, with runs of digits compared by value so that program2
+	 * comes before program10.
+	 *
+	 * @param spec The directory or glob.
+	 * @return The programs, in order.
+	 * @throws IOException if the file system cannot be read.
+	 */
+	private static List<String> listInput( String spec ) throws IOException {
+		List<Path> paths = new ArrayList<Path>();
+		Path path = Paths.get( spec );
+		if( Files.isDirectory( path ) ) {
+			try( DirectoryStream<Path> dir = Files.newDirectoryStream( path ) ) {
+				for( Path p : dir )
+					if( Files.isRegularFile( p ) && !Files.isHidden( p ) ) paths.add( p );
+			}
+		} else {
+			int glob = 0;
+			while( glob < path.getNameCount() && !hasGlobCharacter( path.getName( glob ).toString() ) )
+				glob++;
+			if( glob == path.getNameCount() )
+				throw new FileNotFoundException( spec + " is neither a directory nor a glob" );
+
+			Path fixed = (glob == 0) ? Paths.get( "" ) : path.subpath( 0, glob );
+			Path base = path.isAbsolute() ? path.getRoot().resolve( fixed ) : fixed;
+			String pattern = path.subpath( glob, path.getNameCount() ).toString();
+
+			if( glob == path.getNameCount() - 1 ) {
+				try( DirectoryStream<Path> dir = Files.newDirectoryStream( base.toString().isEmpty() ? Paths.get( "." ) : base, pattern ) ) {
+					for( Path p : dir )
+						if( Files.isRegularFile( p ) ) paths.add( base.resolve( p.getFileName() ) );
+				}
+			} else {
+				PathMatcher matcher = FileSystems.getDefault().getPathMatcher( "glob:" + pattern );
+				Path root = base.toString().isEmpty() ? Paths.get( "." ) : base;
+				try( Stream<Path> walk = Files.walk( root ) ) {
+					walk.filter( Files::isRegularFile )
+						.filter( p -> matcher.matches( root.relativize( p ) ) )
+						.forEach( p -> paths.add( base.resolve( root.relativize( p ) ) ) );
+				}
+			}
+		}
+
+		List<String> names = new ArrayList<String>();
+		for( Path p : paths ) names.add( p.toString() );
+		names.sort( Compile::compareNaturally );
+		return names;
+	} // end of method listInput
+
+	/**
+	 * @param segment A segment of a path.
+	 * @return true if the segment contains a glob character.
+	 */
+	private static boolean hasGlobCharacter( String segment ) {
+		for( char c : segment.toCharArray() )
+			if( "*?[{".indexOf( c ) >= 0 ) return true;
+		return false;
+	} // end of method hasGlobCharacter
+
+	/**
+	 * Compares two names character by character, except that runs of digits
+	 * are compared by their numeric value.
+	 *
+	 * @param a The first name.
+	 * @param b The second name.
+	 * @return a negative number, zero or a positive number as a sorts before, with or after b.
+	 */
+	private static int compareNaturally( String a, String b ) {
+		int i = 0, j = 0;
+		while( i < a.length() && j < b.length() ) {
+			char c = a.charAt( i ), d = b.charAt( j );
+			if( Character.isDigit( c ) && Character.isDigit( d ) ) {
+				int iEnd = i, jEnd = j;
+				while( iEnd < a.length() && Character.isDigit( a.charAt( iEnd ) ) ) iEnd++;
+				while( jEnd < b.length() && Character.isDigit( b.charAt( jEnd ) ) ) jEnd++;
+				// Strip leading zeros, then the longer run of digits is the larger number
+				while( i < iEnd - 1 && a.charAt( i ) == '0' ) i++;
+				while( j < jEnd - 1 && b.charAt( j ) == '0' ) j++;
+				if( iEnd - i != jEnd - j ) return (iEnd - i) - (jEnd - j);
+				for( ; i < iEnd; i++, j++ )
+					if( a.charAt( i ) != b.charAt( j ) ) return a.charAt( i ) - b.charAt( j );
+			} else {
+				if( c != d ) return c - d;
+				i++;
+				j++;
+			}
+		}
+		return (a.length() - i) - (b.length() - j);
+	} // end of method compareNaturally
+
+	/**
+	 * Compiles each program, in turn or in parallel depending on the number of threads.
+	 *
+	 * @param fileNames The programs to compile, in order.
+	 * @param out The stream to write the verdicts to.
+	 * @throws IOException if a program cannot be read.
+	 */
+	private void compileAll( List<String> fileNames, PrintStream out ) throws IOException {
+		if( threads == 0 || threads > 1 ) {
+			compileInParallel( fileNames, out );
+			return;
+		}
+
+		for( String name : fileNames ) {
+			System.out.println();
+			System.out.println( "rggFILE " + name );
+
+			SyntaxAnalyser syn = new SyntaxAnalyser(name) ;
+			syn.setRecovery( recover );
+			if( syn.parse( out ) ) passed++;
+			else failed++;
+			writeDiagnostics( syn.getDiagnostics() );
+		}
+	} // end of method compileAll
+
+	/**
+	 * Writes diagnostics as JSON, one per line, if asked to with -json.
+	 *
+	 * @param diagnostics The diagnostics of one program.
+	 */
+	private void writeDiagnostics( List<Diagnostic> diagnostics ) {
+		if( json == null )
+			return;
+		for( Diagnostic diagnostic : diagnostics )
+			json.println( diagnostic.toJson() );
+	} // end of method writeDiagnostics
+
+	/**
+	 * Compiles each program on a pool of threads, each with its own SyntaxAnalyser
+	 * and Generate, and writes the traces and verdicts in the order the programs
+	 * were given, exactly as compiling them in turn would. Each result is written
+	 * as soon as it and those before it are ready and is then let go, and only a
+	 * few programs per thread are compiled ahead, so memory does not grow with the
+	 * number of programs.
+	 *
+	 * @param fileNames The programs to compile, in order.
+	 * @param out The stream to write the verdicts to.
+	 * @throws IOException if a program cannot be read.
+	 */
+	private void compileInParallel( List<String> fileNames, PrintStream out ) throws IOException {
+		int poolSize = (threads > 0) ? threads : Runtime.getRuntime().availableProcessors();
+		ExecutorService pool = Executors.newFixedThreadPool( poolSize );
+		try {
+			int ahead = 2 * poolSize;
+			ArrayDeque<Future<Result>> pending = new ArrayDeque<Future<Result>>( ahead );
+			int submitted = 0;
+			for( int i = 0; i < fileNames.size(); i++ ) {
+				while( submitted < fileNames.size() && pending.size() < ahead ) {
+					String name = fileNames.get( submitted++ );
+					pending.add( pool.submit( () -> compileIsolated( name, recover ) ) );
+				}
+				Result result = pending.remove().get();
+				System.out.println();
+				System.out.println( "rggFILE " + fileNames.get( i ) );
+				System.out.print( result.trace );
+				out.print( result.verdict );
+				if( result.compiled ) passed++;
+				else failed++;
+				writeDiagnostics( result.diagnostics );
+			}
+		} catch( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException( "interrupted while compiling" );
+		} catch( ExecutionException e ) {
+			if( e.getCause() instanceof IOException )
+				throw (IOException) e.getCause();
+			throw new RuntimeException( e.getCause() );
+		} finally {
+			pool.shutdownNow();
+		}
+	} // end of method compileInParallel
+
+	/**
+	 * Compiles one program, capturing its trace, verdict and diagnostics in memory.
+	 *
+	 * @param name The program to compile.
+	 * @param recover Whether to carry on after errors.
+	 * @return The trace, verdict and diagnostics.
+	 * @throws IOException if the program cannot be read.
+	 */
+	private static Result compileIsolated( String name, boolean recover ) throws IOException {
+		TraceSink trace = TraceSink.inMemory();
+		ByteArrayOutputStream verdict = new ByteArrayOutputStream();
+		SyntaxAnalyser syn = new SyntaxAnalyser( name );
+		syn.setTraceSink( trace );
+		syn.setRecovery( recover );
+		boolean compiled = syn.parse( new PrintStream( verdict ) );
+		return new Result( trace.toString(), verdict.toString(), compiled, syn.getDiagnostics() );
+	} // end of method compileIsolated
+
 	public static void main(String args[]) throws IOException {
 		Compile c = new Compile();
-		c.go();
+		for( int i = 0; i < args.length; i++ ) {
+			if( args[i].equals( "-threads" ) && (i + 1 < args.length) )
+				c.threads = Integer.parseInt( args[++i] );
+			else if( args[i].equals( "-input" ) && (i + 1 < args.length) )
+				c.input = args[++i];
+			else if( args[i].equals( "-recover" ) )
+				c.recover = true;
+			else if( args[i].equals( "-json" ) && (i + 1 < args.length) )
+				c.jsonFile = args[++i];
+			else if( args[i].equals( "-server" ) && (i + 1 < args.length) )
+				c.port = Integer.parseInt( args[++i] );
+			else {
+				System.err.println( "usage: java Compile [-threads N] [-input DIRECTORY|GLOB] [-recover] [-json FILE] [-server PORT]" );
+				System.exit( 1 );
+			}
+		}
+		if( c.port >= 0 )
+			c.serve();
+		else
+			c.go();
 	};
 
 } // end of class Compile
@@ -0,0 +1,255 @@
+/**
+ * Code: Diagnostic Class   Diagnostic.java
+ *
+ * An error found in a source, held as its facts: what kind of error it is, where it was found, the token found
+ * there and the symbols which would have been accepted instead. The message is only built the first time it is
+ * asked for, so an error which is never shown, such as one recognised without a trace and never printed, costs
+ * no string building. Each diagnostic can also be written as a line of JSON for tools to read.
+ */
+public class Diagnostic {
+
+  /**
+   * How serious a diagnostic is.
+   */
+  public enum Severity {
+    ERROR,
+    WARNING;
+  }
+
+  /**
+   * The kind of a diagnostic, with a stable code for tools, the template of its message and, for syntax errors,
+   * the symbols which would have been accepted.
+   */
+  public enum Code {
+    EXPECTED_SYMBOL("E100", "expected %s"),
+    EXPECTED_STATEMENT("E101", "expected a statement (if/while/procedure/until/for)",
+        Token.identifier, Token.ifSymbol, Token.whileSymbol, Token.callSymbol, Token.doSymbol, Token.forSymbol),
+    EXPECTED_OPERAND("E102", "expected identifier/number/string",
+        Token.identifier, Token.numberConstant, Token.stringConstant),
+    EXPECTED_CONDITIONAL_OPERATOR("E103", "expected a conditional operator (>, >=, =, /=, <, <=)",
+        Token.greaterThanSymbol, Token.greaterEqualSymbol, Token.equalSymbol, Token.notEqualSymbol,
+        Token.lessThanSymbol, Token.lessEqualSymbol),
+    EXPECTED_FACTOR("E104", "expected an identifier, number constant or ( expression )",
+        Token.identifier, Token.numberConstant, Token.leftParenthesis),
+    UNDECLARED_VARIABLE("E200", "variable with identifier '%s' has not been declared"),
+    SUBTRACT_VARIABLE("E300", "cannot subtract variable of type %s from %s (%s)"),
+    ADD_VARIABLE("E301", "cannot add variable of type %s to %s (%s)"),
+    ADD_TO("E302", "cannot be added to %s (%s)"),
+    SUBTRACT_FROM("E303", "cannot be subtracted from %s (%s)"),
+    ADD_EXPRESSIONS("E304", "cannot add expressions of type Number to type String"),
+    SUBTRACT_EXPRESSIONS("E305", "cannot subtract expressions of type Number to type String"),
+    MULTIPLY_VARIABLE("E306", "cannot multiply variable of type %s to %s (%s)"),
+    DIVIDE_VARIABLE("E307", "cannot divide variable of type %s into %s (%s)"),
+    MULTIPLY_BY_STRING("E308", "cannot multiply %s with a String"),
+    DIVIDE_INTO_STRING("E309", "cannot divide %s into a String"),
+    DIVIDE_BY_STRING("E310", "cannot divide %s by a String"),
+    MULTIPLY_TERMS("E311", "cannot multiply terms of type Number with type String"),
+    DIVIDE_EXPRESSIONS("E312", "cannot divide expressions of type Number with type String");
+
+    public final String id;         /** The code reported to tools, which stays the same between versions **/
+    private final String template;  /** The message, with %s for each argument **/
+    private final int[] expected;   /** The symbols which would have been accepted, if fixed by the kind **/
+
+    private Code(String id, String template, int... expected) {
+      this.id = id;
+      this.template = template;
+      this.expected = expected;
+    }
+  }
+
+  private static final int[] NONE = new int[0];  /** No symbols **/
+
+  private final Code code;              /** The kind of the diagnostic **/
+  private final Severity severity;      /** How serious it is **/
+  private final String file;            /** The name of the source **/
+  private final int line;               /** The line it was found on, as the lexical analyser numbers lines **/
+  private final int column;             /** The column of the token found, counting from 0 **/
+  private final int found;              /** The symbol found, as a class constant from Token **/
+  private final String foundText;       /** The text of the token found **/
+  private final int expectedSymbol;     /** The symbol expected for EXPECTED_SYMBOL, otherwise -1 **/
+  private final Object[] arguments;     /** The arguments of the message, turned into text only when it is built **/
+  private String message;               /** The message, once built **/
+
+  /**
+   * Records an error found at a token. The details of the token are copied, since a syntax analyser may
+   * reuse its Token for the next token.
+   * @param code the kind of the error.
+   * @param file the name of the source.
+   * @param token the token found where the error was found.
+   * @param expectedSymbol the symbol expected, for EXPECTED_SYMBOL, otherwise -1.
+   * @param arguments the arguments of the message, one for each %s of its template.
+   */
+  public Diagnostic(Code code, String file, Token token, int expectedSymbol, Object... arguments) {
+    this.code = code;
+    this.severity = Severity.ERROR;
+    this.file = file;
+    this.line = token.lineNumber;
+    this.column = token.column;
+    this.found = token.symbol;
+    this.foundText = token.text;
+    this.expectedSymbol = expectedSymbol;
+    this.arguments = arguments;
+  }
+
+  /**
+   * Gets the kind of the diagnostic.
+   * @return the code.
+   */
+  public Code getCode() {
+    return code;
+  }
+
+  /**
+   * Gets how serious the diagnostic is.
+   * @return the severity.
+   */
+  public Severity getSeverity() {
+    return severity;
+  }
+
+  /**
+   * Gets the name of the source the diagnostic was found in.
+   * @return the file name, or the name given for source held in memory.
+   */
+  public String getFile() {
+    return file;
+  }
+
+  /**
+   * Gets the line the diagnostic was found on.
+   * @return the line number, as the lexical analyser numbers lines.
+   */
+  public int getLine() {
+    return line;
+  }
+
+  /**
+   * Gets the column of the token the diagnostic was found at.
+   * @return the column, counting from 0, or -1 if it is not known.
+   */
+  public int getColumn() {
+    return column;
+  }
+
+  /**
+   * Gets the symbol found where the diagnostic was found.
+   * @return the symbol, as a class constant from Token.
+   */
+  public int getFound() {
+    return found;
+  }
+
+  /**
+   * Gets the text of the token found where the diagnostic was found.
+   * @return the text, as the token held it.
+   */
+  public String getFoundText() {
+    return foundText;
+  }
+
+  /**
+   * Gets the symbols which would have been accepted instead of the one found.
+   * @return the symbols, as class constants from Token, which are none for an error which is not a syntax error.
+   */
+  public int[] getExpected() {
+    if (expectedSymbol >= 0) {
+      return new int[] { expectedSymbol };
+    }
+    return (code.expected.length == 0) ? NONE : code.expected.clone();
+  }
+
+  /**
+   * Gets the message, as the syntax analyser has always reported it, building it the first time.
+   * @return the message.
+   */
+  public String getMessage() {
+    if (message == null) {
+      Object[] values = (expectedSymbol >= 0) ? new Object[] { Token.getName(expectedSymbol) } : arguments;
+      String detail = (values.length == 0) ? code.template : String.format(code.template, values);
+      message = "(" + file + ":" + line + ") found '" + foundText + "' (" + Token.getName(found) + "), " + detail;
+    }
+    return message;
+  }
+
+  /**
+   * Writes the diagnostic as one line of JSON, with its code, severity, file, line, column, the symbol and text
+   * found, the symbols expected and the message.
+   * @return the JSON object, with no line end.
+   */
+  public String toJson() {
+    StringBuilder json = new StringBuilder(256);
+    json.append("{\"code\":");
+    appendString(json, code.id);
+    json.append(",\"severity\":");
+    appendString(json, severity.name().toLowerCase());
+    json.append(",\"file\":");
+    appendString(json, file);
+    json.append(",\"line\":").append(line);
+    json.append(",\"column\":").append(column);
+    json.append(",\"found\":");
+    appendString(json, Token.getName(found));
+    json.append(",\"foundText\":");
+    appendString(json, foundText);
+    json.append(",\"expected\":[");
+    int[] expected = getExpected();
+    for (int i = 0; i < expected.length; i++) {
+      if (i > 0) {
+        json.append(',');
+      }
+      appendString(json, Token.getName(expected[i]));
+    }
+    json.append("],\"message\":");
+    appendString(json, getMessage());
+    return json.append('}').toString();
+  }
+
+  /**
+   * Appends a string to JSON being built, quoted and escaped.
+   * @param json the JSON being built.
+   * @param value the string, or null.
+   */
+  private static void appendString(StringBuilder json, String value) {
+    if (value == null) {
+      json.append("null");
+      return;
+    }
+    json.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '"':
+          json.append("\\\"");
+          break;
+        case '\\':
+          json.append("\\\\");
+          break;
+        case '\n':
+          json.append("\\n");
+          break;
+        case '\r':
+          json.append("\\r");
+          break;
+        case '\t':
+          json.append("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            json.append(String.format("\\u%04x", (int) c));
+          } else {
+            json.append(c);
+          }
+          break;
+      }
+    }
+    json.append('"');
+  }
+
+  /**
+   * Gets the message.
+   * @return the message.
+   */
+  @Override
+  public String toString() {
+    return getMessage();
+  }
+}
@@ -1,5 +1,8 @@
-import java.util.Set;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.HashMap;
 
 /**
  * Code: Generate Class   Generate.java
@@ -12,13 +15,28 @@ import java.util.HashSet;
  */
 public class Generate extends AbstractGenerate {
 
-  private Set<Variable> variables;  /** Stores variable references **/
+  private Map<String, Variable> variables;  /** Stores variable references keyed by identifier **/
+  private List<Variable> declarations;      /** Undo log of added variables, in declaration order **/
+  private int[] scopeStarts;                /** Size of the undo log when each open scope began **/
+  private int scopeDepth;                   /** Number of open scopes **/
 
   /**
-   * Initialises the variable references set.
+   * Initialises the variable references map and the scope stack, writing the trace to standard output.
    */
   public Generate() {
-    variables = new HashSet<Variable>(); 
+    this(TraceSink.printStream(System.out));
+  }
+
+  /**
+   * Initialises the variable references map and the scope stack.
+   * @param trace the sink to write the trace to.
+   */
+  public Generate(TraceSink trace) {
+    super(trace);
+    variables = new HashMap<String, Variable>();
+    declarations = new ArrayList<Variable>();
+    scopeStarts = new int[8];
+    scopeDepth = 0;
   }
 
   /**
@@ -31,36 +49,82 @@ public class Generate extends AbstractGenerate {
    */
   @Override
   public void reportError( Token token, String explanatoryMessage ) throws CompilationException {
-    System.out.println("rggERROR " + explanatoryMessage);
+    trace.print("rggERROR ").print(explanatoryMessage).println();
     throw new CompilationException(explanatoryMessage, token.lineNumber);
   }
 
+  /**
+   * Reports an error found by the syntax analyser through the use of a CompilationException carrying it.
+   * The message is only built here if there is a trace to write it to.
+   *
+   * @param diagnostic the error found.
+   * @throws CompilationException reporting this information.
+   */
+  @Override
+  public void reportError(Diagnostic diagnostic) throws CompilationException {
+    if (trace.isEnabled()) {
+      trace.print("rggERROR ").print(diagnostic.getMessage()).println();
+    }
+    throw new CompilationException(diagnostic);
+  }
+
   /**
    * Add a variable to the current symbol list.
-   * The variable is only added to the set if it doesn't already exist.
+   * The variable is only added to the map if it doesn't already exist.
    * If the same variable is being declared again, it is simply re-initialised with a new value.
    * @param v The variable to add.
    */
   @Override
   public void addVariable(Variable v) {
-    if (getVariable(v.identifier) == null) {
-      variables.add(v);
-      System.out.println("rggDECL " + v);
+    if (variables.putIfAbsent(v.identifier, v) == null) {
+      if (scopeDepth > 0) {
+        declarations.add(v);
+      }
+      traceVariable("rggDECL ", v);
     }
   }
 
   /**
    * Removes a variable from the current symbol list.
-   * The variable is only removed from the set if it exists.
+   * The variable is only removed from the map if it exists.
    * If the same variable is being declared again, it is simply re-initialised with a new value.
    * @param v The variable to add
    */
   @Override
   public void removeVariable(Variable v) {
-    if (getVariable(v.identifier) != null) {
-      variables.remove(v);
-      System.out.println("rggDROP " + v);
+    if (variables.remove(v.identifier) != null) {
+      traceVariable("rggDROP ", v);
+    }
+  }
+
+  /**
+   * Opens a new scope by remembering where its declarations begin in the undo log.
+   */
+  @Override
+  public void enterScope() {
+    if (scopeDepth == scopeStarts.length) {
+      scopeStarts = Arrays.copyOf(scopeStarts, 2 * scopeDepth);
+    }
+    scopeStarts[scopeDepth++] = declarations.size();
+  }
+
+  /**
+   * Closes the innermost scope, truncating the undo log back to where the scope began.
+   * Only variables declared in this scope (and its inner scopes which are still known) are returned,
+   * so the cost is proportional to the declarations in the scope rather than the whole table.
+   * @return the variables going out of scope, in declaration order.
+   */
+  @Override
+  public List<Variable> exitScope() {
+    List<Variable> scoped = declarations.subList(scopeStarts[--scopeDepth], declarations.size());
+    List<Variable> leaving = new ArrayList<Variable>(scoped.size());
+    for (Variable v : scoped) {
+      if (variables.get(v.identifier) == v) {
+        leaving.add(v);
+      }
     }
+    scoped.clear();
+    return leaving;
   }
 
   /**
@@ -70,13 +134,7 @@ public class Generate extends AbstractGenerate {
    */
   @Override
   public Variable getVariable(String identifier) {
-    Variable returnVar = null;
-    for (Variable v : variables) {
-      if (v.identifier.equals(identifier)) {
-        returnVar = v;
-      }
-    }
-    return returnVar;
+    return variables.get(identifier);
   }
 }
 
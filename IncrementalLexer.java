@@ -0,0 +1,232 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Code: IncrementalLexer Class   IncrementalLexer.java
+ *
+ * Keeps the tokens of a source held in memory up to date as the source is edited.
+ * Tokens are held in parallel arrays of symbol, start offset, length, line and identifier number,
+ * exactly as LexicalAnalyser scans them from the start of the source.
+ * After an edit only the tokens from the last one ending before the edit are scanned again, until
+ * the scan reaches an old token at the same place beyond the edit, from where the old tokens are kept.
+ */
+public class IncrementalLexer extends TokenBuffer {
+
+  private static final int INITIAL_TOKENS = 256;  /** Capacity for tokens scanned again when first created **/
+
+  private int[] newSymbols = new int[INITIAL_TOKENS];  /** Tokens scanned again after an edit **/
+  private int[] newStarts = new int[INITIAL_TOKENS];
+  private int[] newLengths = new int[INITIAL_TOKENS];
+  private int[] newLines = new int[INITIAL_TOKENS];
+  private int[] newIds = new int[INITIAL_TOKENS];
+
+  private int changedFrom;  /** First token replaced by the last edit **/
+  private int changedTo;    /** Token following the last one replaced by the last edit **/
+  private int resyncedAt;   /** Old token at which the last scan resynchronised, or count if it reached the end of file **/
+  private int offsetDelta;  /** Change in the offset of characters beyond the last edit **/
+  private int lineDelta;    /** Change in the line of characters beyond the last edit **/
+
+  /**
+   * Creates an incremental lexer and scans the whole of the given source.
+   * @param name the name to report for the source, in place of a file name.
+   * @param source the source text.
+   */
+  public IncrementalLexer(String name, CharSequence source) {
+    super(name, source);
+    changedFrom = 0;
+    changedTo = count;
+  }
+
+  /**
+   * Replaces the characters from start to end of the source, and brings the tokens up to date.
+   * @param start the offset of the first character replaced.
+   * @param end the offset following the last character replaced.
+   * @param replacement the text to put in their place.
+   * @return the number of tokens scanned again.
+   * @throws IndexOutOfBoundsException if the range is not within the source.
+   */
+  public int edit(int start, int end, CharSequence replacement) {
+    Objects.checkFromToIndex(start, end, length);
+
+    char[] inserted = new char[replacement.length()];
+    for (int i = 0; i < inserted.length; i++) {
+      inserted[i] = replacement.charAt(i);
+    }
+    int insertedLength = LexicalAnalyser.normaliseLineEnds(inserted, inserted.length);
+    int delta = insertedLength - (end - start);
+    int lineDelta = countLineEnds(inserted, 0, insertedLength) - countLineEnds(text, start, end);
+    this.offsetDelta = delta;
+    this.lineDelta = lineDelta;
+
+    if (length + delta > text.length) {
+      text = Arrays.copyOf(text, Math.max(length + delta, 2 * text.length));
+    }
+    System.arraycopy(text, end, text, start + insertedLength, length - end);
+    System.arraycopy(inserted, 0, text, start, insertedLength);
+    length += delta;
+    lex.replaceSource(text, length);
+    columnFrom = 0;
+    lineStart = 0;
+
+    // The scan of a token looks one character beyond it, so restart at the last token ending strictly before the edit
+    int restart = -1;
+    int low = 0, high = count - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      if (starts[middle] + lengths[middle] < start) {
+        restart = middle;
+        low = middle + 1;
+      } else {
+        high = middle - 1;
+      }
+    }
+    int from = (restart < 0) ? 0 : restart;
+
+    // Old tokens are only reused if they start at or beyond the end of the edit, where their text is unchanged
+    int resync = from;
+    while (resync < count && starts[resync] < end) {
+      resync++;
+    }
+    int scanned = scan(restart, resync, delta, lineDelta);
+    replace(from, resyncedAt, scanned, delta, lineDelta);
+    changedFrom = from;
+    changedTo = from + scanned;
+    return scanned;
+  }
+
+  /**
+   * Scans tokens into the new token arrays until the end of file, or until a token starts where an old one
+   * beyond the edit has moved to on the same line as it has moved to.
+   * @param restart the token to scan from, or -1 to scan from the start of the source.
+   * @param candidate the first old token which may be reused, beyond the edit.
+   * @param delta the change in the offset of characters beyond the edit.
+   * @param lineDelta the change in the line of characters beyond the edit.
+   * @return the number of tokens scanned, not counting any token matched with an old one.
+   */
+  private int scan(int restart, int candidate, int delta, int lineDelta) {
+    if (restart < 0) {
+      lex.restart(0, 0);
+    } else {
+      lex.restart(starts[restart], lines[restart]);
+    }
+
+    int scanned = 0;
+    int symbol;
+    try {
+      do {
+        symbol = lex.advance();
+        int start = lex.getTokenStart();
+        while (candidate < count && starts[candidate] + delta < start) {
+          candidate++;
+        }
+        if (candidate < count && starts[candidate] + delta == start && lines[candidate] + lineDelta == lex.getTokenLine()) {
+          resyncedAt = candidate;
+          return scanned;
+        }
+
+        if (scanned == newSymbols.length) {
+          int capacity = 2 * scanned;
+          newSymbols = Arrays.copyOf(newSymbols, capacity);
+          newStarts = Arrays.copyOf(newStarts, capacity);
+          newLengths = Arrays.copyOf(newLengths, capacity);
+          newLines = Arrays.copyOf(newLines, capacity);
+          newIds = Arrays.copyOf(newIds, capacity);
+        }
+        newSymbols[scanned] = symbol;
+        newStarts[scanned] = start;
+        newLengths[scanned] = lex.getTokenLength();
+        newLines[scanned] = lex.getTokenLine();
+        newIds[scanned] = lex.getTokenId();
+        scanned++;
+      } while (symbol != Token.eofSymbol);
+    } catch (IOException e) {
+      // Cannot happen: the source is held in memory
+      throw new IllegalStateException(e);
+    }
+    resyncedAt = count;
+    return scanned;
+  }
+
+  /**
+   * Replaces the old tokens from one index up to another with the tokens just scanned,
+   * moving the tokens kept beyond them by the change in offset and line.
+   * @param from the first old token replaced.
+   * @param to the old token following the last one replaced.
+   * @param scanned the number of tokens scanned to replace them.
+   * @param delta the change in offset of the tokens kept.
+   * @param lineDelta the change in line of the tokens kept.
+   */
+  private void replace(int from, int to, int scanned, int delta, int lineDelta) {
+    int tail = count - to;
+    int newCount = from + scanned + tail;
+    ensureCapacity(newCount);
+
+    int moved = from + scanned;
+    System.arraycopy(symbols, to, symbols, moved, tail);
+    System.arraycopy(starts, to, starts, moved, tail);
+    System.arraycopy(lengths, to, lengths, moved, tail);
+    System.arraycopy(lines, to, lines, moved, tail);
+    System.arraycopy(ids, to, ids, moved, tail);
+    for (int i = moved; i < newCount; i++) {
+      starts[i] += delta;
+      lines[i] += lineDelta;
+    }
+
+    System.arraycopy(newSymbols, 0, symbols, from, scanned);
+    System.arraycopy(newStarts, 0, starts, from, scanned);
+    System.arraycopy(newLengths, 0, lengths, from, scanned);
+    System.arraycopy(newLines, 0, lines, from, scanned);
+    System.arraycopy(newIds, 0, ids, from, scanned);
+    count = newCount;
+  }
+
+  /**
+   * Counts the line ends in part of an array.
+   * @param chars the characters to count in, with line ends normalised.
+   * @param from the first character to count.
+   * @param to the character following the last to count.
+   * @return the number of line ends.
+   */
+  private static int countLineEnds(char[] chars, int from, int to) {
+    int lineEnds = 0;
+    for (int i = from; i < to; i++) {
+      if (chars[i] == '\n') {
+        lineEnds++;
+      }
+    }
+    return lineEnds;
+  }
+
+  /**
+   * Gets the index of the first token replaced by the last edit.
+   * @return the index of the token.
+   */
+  public int getChangedFrom() {
+    return changedFrom;
+  }
+
+  /**
+   * Gets the index of the token following the last one replaced by the last edit.
+   * @return the index of the token.
+   */
+  public int getChangedTo() {
+    return changedTo;
+  }
+
+  /**
+   * Gets how far characters beyond the last edit have moved.
+   * @return the change in their offset.
+   */
+  public int getOffsetDelta() {
+    return offsetDelta;
+  }
+
+  /**
+   * Gets how many lines characters beyond the last edit have moved.
+   * @return the change in their line number.
+   */
+  public int getLineDelta() {
+    return lineDelta;
+  }
+}
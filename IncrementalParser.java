@@ -0,0 +1,596 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Code: IncrementalParser Class   IncrementalParser.java
+ *
+ * Syntax analyser for source held in memory which is edited and recognised again after each edit,
+ * as an editor would. Tokens are read from an IncrementalLexer, which keeps them up to date after
+ * each edit, so neither a full parse nor parsing a statement again scans the source.
+ * Each full parse records a tree of the non-terminals with the character span
+ * of each, and the variables declared and dropped as it went. After an edit only the smallest
+ * statement enclosing it is parsed again, starting from a symbol table replayed from the recorded
+ * declarations, and its new subtree replaces the old one.
+ * The rest of the tree is reused provided the statement is followed by the same token as before and
+ * declares and drops the same variables; otherwise the enclosing statement is tried, and failing that
+ * the next recognition parses the whole program again. Errors are always reported by a full parse,
+ * so the output is exactly that of SyntaxAnalyser.
+ */
+public class IncrementalParser extends SyntaxAnalyser {
+
+  private static final int RESYNCED = 0;  /** The statement parsed again and the tree is up to date **/
+  private static final int MOVED = 1;     /** The statement parsed again, but changed what follows it **/
+  private static final int FAILED = 2;    /** The statement no longer parses **/
+
+  /**
+   * A variable declared or dropped during a parse.
+   */
+  private static final class Event {
+    final Variable variable;  /** The variable **/
+    final boolean added;      /** Whether it was declared rather than dropped **/
+
+    Event(Variable variable, boolean added) {
+      this.variable = variable;
+      this.added = added;
+    }
+  }
+
+  /**
+   * Non-terminals in the order they began, held in parallel arrays.
+   */
+  private static final class Nodes {
+    int[] kinds = new int[64];        /** Kind of each node, numbering its non-terminal name **/
+    int[] parents = new int[64];      /** Index of the enclosing node, or -1 **/
+    int[] ends = new int[64];         /** Index following the last node enclosed **/
+    int[] starts = new int[64];       /** Offset of the first token **/
+    int[] stops = new int[64];        /** Offset following the last token **/
+    int[] befores = new int[64];      /** Offset following the token before the node **/
+    int[] beforeLines = new int[64];  /** Line of the token before the node **/
+    int[] follows = new int[64];      /** Offset of the token following the node **/
+    int[] followLines = new int[64];  /** Line of the token following the node **/
+    int[] eventFroms = new int[64];   /** First event during the node **/
+    int[] eventTos = new int[64];     /** Event following the last during the node **/
+    int count;                        /** Number of nodes **/
+
+    int[] open = new int[64];         /** Nodes begun but not yet finished **/
+    int depth;                        /** Number of nodes open **/
+
+    void clear() {
+      count = 0;
+      depth = 0;
+    }
+
+    void ensureCapacity(int capacity) {
+      if (capacity > kinds.length) {
+        capacity = Math.max(capacity, 2 * kinds.length);
+        kinds = Arrays.copyOf(kinds, capacity);
+        parents = Arrays.copyOf(parents, capacity);
+        ends = Arrays.copyOf(ends, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        stops = Arrays.copyOf(stops, capacity);
+        befores = Arrays.copyOf(befores, capacity);
+        beforeLines = Arrays.copyOf(beforeLines, capacity);
+        follows = Arrays.copyOf(follows, capacity);
+        followLines = Arrays.copyOf(followLines, capacity);
+        eventFroms = Arrays.copyOf(eventFroms, capacity);
+        eventTos = Arrays.copyOf(eventTos, capacity);
+      }
+    }
+
+    void begin(int kind, int start, int before, int beforeLine, int eventFrom) {
+      ensureCapacity(count + 1);
+      if (depth == open.length) {
+        open = Arrays.copyOf(open, 2 * depth);
+      }
+      kinds[count] = kind;
+      parents[count] = (depth > 0) ? open[depth - 1] : -1;
+      starts[count] = start;
+      befores[count] = before;
+      beforeLines[count] = beforeLine;
+      eventFroms[count] = eventFrom;
+      open[depth++] = count++;
+    }
+
+    void finish(int stop, int follow, int followLine, int eventTo) {
+      int node = open[--depth];
+      ends[node] = count;
+      stops[node] = stop;
+      follows[node] = follow;
+      followLines[node] = followLine;
+      eventTos[node] = eventTo;
+    }
+  }
+
+  private final IncrementalLexer lexer;  /** Holds the source and keeps its tokens up to date **/
+
+  private final Map<String, Integer> kindNumbers = new HashMap<String, Integer>();  /** Number of each non-terminal name **/
+  private final List<String> kindNames = new ArrayList<String>();                   /** Name of each non-terminal number **/
+  private final int statementKind;                                                  /** Number of the Statement non-terminal **/
+
+  private final Nodes tree = new Nodes();      /** The tree recorded by the last full parse, kept up to date **/
+  private final Nodes reparsed = new Nodes();  /** The subtree recorded by parsing a statement again **/
+  private Nodes recording = tree;              /** Where non-terminals are being recorded **/
+
+  private final List<Event> events = new ArrayList<Event>();          /** Declarations and drops, in parse order **/
+  private final List<Event> reparsedEvents = new ArrayList<Event>();  /** Declarations and drops parsing a statement again **/
+  private List<Event> recordingEvents = events;                       /** Where declarations and drops are being recorded **/
+
+  private int tokenIndex;   /** Index in the incremental lexer of the next token **/
+  private int lastEnd;      /** Offset following the last token accepted **/
+  private int lastLine;     /** Line of the last token accepted **/
+  private boolean current;  /** Whether the tree is complete, up to date and the program compiles **/
+
+  /**
+   * Initialises an incremental parser for source text held in memory. Nothing is parsed until it is recognised.
+   * @param name the name to report for the source, in place of a file name.
+   * @param source the source text.
+   */
+  public IncrementalParser(String name, CharSequence source) {
+    this(new IncrementalLexer(name, source));
+  }
+
+  /**
+   * Initialises an incremental parser over the source of an incremental lexer, which should then only be edited through this parser.
+   * @param lexer the incremental lexer holding the source.
+   */
+  private IncrementalParser(IncrementalLexer lexer) {
+    super(lexer);
+    this.lexer = lexer;
+    this.statementKind = kindNumber("Statement");
+  }
+
+  /**
+   * Replaces the characters from start to end of the source, and brings the parse tree up to date
+   * by parsing the smallest enclosing statement again if the program compiled before the edit.
+   * @param start the offset of the first character replaced.
+   * @param end the offset following the last character replaced.
+   * @param replacement the text to put in their place.
+   * @return true if the tree was brought up to date and the program still compiles, false if the
+   *         next recognition must parse the whole program.
+   * @throws IOException if an IOException occured.
+   * @throws IndexOutOfBoundsException if the range is not within the source.
+   */
+  public boolean edit(int start, int end, CharSequence replacement) throws IOException {
+    lexer.edit(start, end, replacement);
+    if (current) {
+      current = reparse(start, end, lexer.getOffsetDelta(), lexer.getLineDelta());
+    }
+    return current;
+  }
+
+  /**
+   * Parses the whole program, recording its tree, unless only recognising a program whose tree is
+   * already up to date after an edit, in which case the verdict is reported without parsing.
+   * @param ps the PrintStream to write the verdict to.
+   * @throws IOException if an IOException occured.
+   * @return true if the input compiled, false if a compilation error was reported.
+   */
+  @Override
+  public boolean parse(PrintStream ps) throws IOException {
+    if (!tracing && current) {
+      ps.println(lex.getFilename());
+      ps.println("OK\n");
+      return true;
+    }
+
+    tree.clear();
+    events.clear();
+    recording = tree;
+    recordingEvents = events;
+    lastEnd = 0;
+    lastLine = 0;
+    current = super.parse(ps);
+    return current;
+  }
+
+  /**
+   * Not supported: an incremental parser only parses its own source.
+   * @param source the lexical analyser to read tokens from.
+   * @param ps the PrintStream to write the verdict to.
+   * @return never.
+   * @throws UnsupportedOperationException always.
+   */
+  @Override
+  public boolean parse(LexicalAnalyser source, PrintStream ps) {
+    throw new UnsupportedOperationException("an incremental parser only parses its own source");
+  }
+
+  /**
+   * Not supported: the tree of an incremental parser only holds statements which parsed.
+   * @param recover true to carry on after errors, which is not supported.
+   * @throws UnsupportedOperationException if recover is true.
+   */
+  @Override
+  public void setRecovery(boolean recover) {
+    if (recover) {
+      throw new UnsupportedOperationException("an incremental parser stops at the first error");
+    }
+  }
+
+  /**
+   * Reads the next token from the incremental lexer, remembering its index so that non-terminals can record their spans.
+   * @return the token read.
+   * @throws IOException if an IOException occured.
+   */
+  @Override
+  Token readToken() throws IOException {
+    tokenIndex = lexer.getPosition();
+    return super.readToken();
+  }
+
+  /**
+   * Accepts a token, remembering where it ends so that non-terminals can record their spans.
+   * @param symbol the next terminal symbol to accept at this point.
+   * @throws IOException if an IOException occured.
+   * @throws CompilationException if a compilation error occured.
+   */
+  @Override
+  public void acceptTerminal(int symbol) throws IOException, CompilationException {
+    int end = lexer.getStart(tokenIndex) + lexer.getLength(tokenIndex);
+    int line = lexer.getLine(tokenIndex);
+    super.acceptTerminal(symbol);
+    lastEnd = end;
+    lastLine = line;
+  }
+
+  /**
+   * Records the start of a non terminal symbol, then commences it as usual.
+   * @param nonTerminal the non terminal string to commence.
+   */
+  @Override
+  public void commenceNonterminal(String nonTerminal) {
+    recording.begin(kindNumber(nonTerminal), lexer.getStart(tokenIndex), lastEnd, lastLine, recordingEvents.size());
+    super.commenceNonterminal(nonTerminal);
+  }
+
+  /**
+   * Records the end of a non terminal symbol, then finishes it as usual.
+   * @param nonTerminal the non terminal string to finish.
+   */
+  @Override
+  public void finishNonterminal(String nonTerminal) {
+    recording.finish(lastEnd, lexer.getStart(tokenIndex), lexer.getLine(tokenIndex), recordingEvents.size());
+    super.finishNonterminal(nonTerminal);
+  }
+
+  /**
+   * Declares a variable as usual, recording the declaration.
+   * @param variableIdentifier the identifier of the variable to add.
+   * @param type the type of the variable.
+   * @return the added variable.
+   */
+  @Override
+  public Variable addVariable(String variableIdentifier, Variable.Type type) {
+    Variable v = super.addVariable(variableIdentifier, type);
+    if (v != null) {
+      recordingEvents.add(new Event(v, true));
+    }
+    return v;
+  }
+
+  /**
+   * Drops a variable as usual, recording the drop.
+   * @param v the variable to remove.
+   */
+  @Override
+  public void removeVariable(Variable v) {
+    if (v != null && myGenerate.getVariable(v.identifier) != null) {
+      recordingEvents.add(new Event(v, false));
+    }
+    super.removeVariable(v);
+  }
+
+  /**
+   * Gets the number of a non-terminal name, numbering it if it has not been seen before.
+   * @param nonTerminal the name of the non-terminal.
+   * @return the number.
+   */
+  private int kindNumber(String nonTerminal) {
+    Integer kind = kindNumbers.get(nonTerminal);
+    if (kind == null) {
+      kind = kindNames.size();
+      kindNumbers.put(nonTerminal, kind);
+      kindNames.add(nonTerminal);
+    }
+    return kind;
+  }
+
+  /** ==========================================================================================
+          Reparsing a statement after an edit
+      ========================================================================================== **/
+
+  /**
+   * Parses the smallest statement enclosing an edit again, then larger ones until one is followed by
+   * the same token as before and declares and drops the same variables.
+   * @param start the offset of the first character replaced.
+   * @param end the offset in the old source following the last character replaced.
+   * @param delta the change in offset of characters beyond the edit.
+   * @param lineDelta the change in line of characters beyond the edit.
+   * @return true if the tree is up to date, false if the whole program must be parsed.
+   * @throws IOException if an IOException occured.
+   */
+  private boolean reparse(int start, int end, int delta, int lineDelta) throws IOException {
+    // The last node starting at or before the edit; any enclosing statement is it or one of its ancestors
+    int low = 0, high = tree.count - 1, last = -1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      if (tree.starts[middle] <= start) {
+        last = middle;
+        low = middle + 1;
+      } else {
+        high = middle - 1;
+      }
+    }
+
+    // Unless the edit is in the gap before a statement, found among the nodes beginning after it
+    int statement = -1;
+    for (int n = last + 1; n < tree.count && tree.starts[n] == tree.starts[last + 1] && statement < 0; n++) {
+      if (encloses(n, start, end)) {
+        statement = n;
+      }
+    }
+    if (statement < 0) {
+      statement = enclosingStatement(last, start, end);
+    }
+
+    while (statement >= 0) {
+      int result = reparseStatement(statement, end, delta, lineDelta);
+      if (result == RESYNCED) {
+        return true;
+      } else if (result == FAILED) {
+        return false;
+      }
+      statement = enclosingStatement(tree.parents[statement], start, end);
+    }
+    return false;
+  }
+
+  /**
+   * Finds the innermost statement which is a node or one of its ancestors and encloses an edit.
+   * @param node the node to start from, or -1.
+   * @param start the offset of the first character replaced.
+   * @param end the offset in the old source following the last character replaced.
+   * @return the index of the statement, or -1 if there is none.
+   */
+  private int enclosingStatement(int node, int start, int end) {
+    for (; node >= 0; node = tree.parents[node]) {
+      if (encloses(node, start, end)) {
+        return node;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Decides whether a node is a statement enclosing an edit: the edit must leave the token before the
+   * statement, and the token following it, untouched.
+   * @param node the index of the node.
+   * @param start the offset of the first character replaced.
+   * @param end the offset in the old source following the last character replaced.
+   * @return true if the statement encloses the edit.
+   */
+  private boolean encloses(int node, int start, int end) {
+    return tree.kinds[node] == statementKind && tree.befores[node] < start && end <= tree.follows[node];
+  }
+
+  /**
+   * Parses a statement again from the token following the one before it, which the edit leaves untouched,
+   * reading the tokens the incremental lexer has brought up to date, with the variables known at the
+   * time replayed from the recorded declarations, and replaces its subtree if the parse ends at the
+   * same token as before and the same variables were declared and dropped.
+   * @param statement the index of the statement.
+   * @param end the offset in the old source following the last character replaced.
+   * @param delta the change in offset of characters beyond the edit.
+   * @param lineDelta the change in line of characters beyond the edit.
+   * @return RESYNCED, MOVED or FAILED.
+   * @throws IOException if an IOException occured.
+   */
+  private int reparseStatement(int statement, int end, int delta, int lineDelta) throws IOException {
+    Generate generate = new Generate(TraceSink.NULL);
+    for (int e = 0; e < tree.eventFroms[statement]; e++) {
+      Event event = events.get(e);
+      if (event.added) {
+        generate.addVariable(event.variable);
+      } else {
+        generate.removeVariable(event.variable);
+      }
+    }
+
+    boolean wasTracing = tracing;
+    TraceSink wasTrace = trace;
+    myGenerate = generate;
+    tracing = false;
+    trace = TraceSink.NULL;
+    reparsed.clear();
+    reparsedEvents.clear();
+    recording = reparsed;
+    recordingEvents = reparsedEvents;
+    lastEnd = tree.befores[statement];
+    lastLine = tree.beforeLines[statement];
+    lexer.setPosition(lexer.findToken(lastEnd));
+    discardLookahead();
+    try {
+      nextToken = readToken();
+      _statement_();
+    } catch (CompilationException e) {
+      return FAILED;
+    } finally {
+      tracing = wasTracing;
+      trace = wasTrace;
+      recording = tree;
+      recordingEvents = events;
+    }
+
+    if (lexer.getStart(tokenIndex) != tree.follows[statement] + delta || lexer.getLine(tokenIndex) != tree.followLines[statement] + lineDelta
+        || !sameEvents(statement)) {
+      return MOVED;
+    }
+    replace(statement, end, delta, lineDelta);
+    return RESYNCED;
+  }
+
+  /**
+   * Decides whether parsing a statement again declared and dropped the same variables, with the
+   * same types and in the same order, as before, so that the rest of the program is unaffected.
+   * @param statement the index of the statement.
+   * @return true if the declarations and drops are the same.
+   */
+  private boolean sameEvents(int statement) {
+    int from = tree.eventFroms[statement];
+    if (tree.eventTos[statement] - from != reparsedEvents.size()) {
+      return false;
+    }
+    for (int i = 0; i < reparsedEvents.size(); i++) {
+      Event before = events.get(from + i);
+      Event after = reparsedEvents.get(i);
+      if (before.added != after.added || before.variable.type != after.variable.type
+          || !before.variable.identifier.equals(after.variable.identifier)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Replaces the subtree of a statement with the one just parsed, moving the nodes beyond it by the
+   * change in offset and line, and fixing the spans of the nodes enclosing it.
+   * @param statement the index of the statement.
+   * @param end the offset in the old source following the last character replaced.
+   * @param delta the change in offset of characters beyond the edit.
+   * @param lineDelta the change in line of characters beyond the edit.
+   */
+  private void replace(int statement, int end, int delta, int lineDelta) {
+    int oldEnd = tree.ends[statement];
+    int oldStart = tree.starts[statement];
+    int oldStop = tree.stops[statement];
+    int added = reparsed.count - (oldEnd - statement);
+
+    // Enclosing nodes share the statement's first or last token, and end beyond the edit
+    for (int n = tree.parents[statement]; n >= 0; n = tree.parents[n]) {
+      tree.ends[n] += added;
+      if (tree.starts[n] == oldStart) {
+        tree.starts[n] = reparsed.starts[0];
+      }
+      tree.stops[n] = (tree.stops[n] == oldStop) ? reparsed.stops[0] : tree.stops[n] + delta;
+      tree.follows[n] += delta;
+      tree.followLines[n] += lineDelta;
+    }
+
+    int tail = tree.count - oldEnd;
+    int moved = oldEnd + added;
+    tree.ensureCapacity(tree.count + added);
+    System.arraycopy(tree.kinds, oldEnd, tree.kinds, moved, tail);
+    System.arraycopy(tree.parents, oldEnd, tree.parents, moved, tail);
+    System.arraycopy(tree.ends, oldEnd, tree.ends, moved, tail);
+    System.arraycopy(tree.starts, oldEnd, tree.starts, moved, tail);
+    System.arraycopy(tree.stops, oldEnd, tree.stops, moved, tail);
+    System.arraycopy(tree.befores, oldEnd, tree.befores, moved, tail);
+    System.arraycopy(tree.beforeLines, oldEnd, tree.beforeLines, moved, tail);
+    System.arraycopy(tree.follows, oldEnd, tree.follows, moved, tail);
+    System.arraycopy(tree.followLines, oldEnd, tree.followLines, moved, tail);
+    System.arraycopy(tree.eventFroms, oldEnd, tree.eventFroms, moved, tail);
+    System.arraycopy(tree.eventTos, oldEnd, tree.eventTos, moved, tail);
+    tree.count += added;
+    for (int n = moved; n < tree.count; n++) {
+      if (tree.parents[n] >= oldEnd) {
+        tree.parents[n] += added;
+      }
+      tree.ends[n] += added;
+      tree.starts[n] += delta;
+      tree.stops[n] += delta;
+      tree.befores[n] += delta;
+      tree.beforeLines[n] += lineDelta;
+      tree.follows[n] += delta;
+      tree.followLines[n] += lineDelta;
+    }
+
+    // The declarations are the same, so the subtree keeps the statement's place among the events
+    int eventBase = tree.eventFroms[statement];
+    int parent = tree.parents[statement];
+    for (int i = 0; i < reparsed.count; i++) {
+      int n = statement + i;
+      tree.kinds[n] = reparsed.kinds[i];
+      tree.parents[n] = (i == 0) ? parent : statement + reparsed.parents[i];
+      tree.ends[n] = statement + reparsed.ends[i];
+      tree.starts[n] = reparsed.starts[i];
+      tree.stops[n] = reparsed.stops[i];
+      tree.befores[n] = reparsed.befores[i];
+      tree.beforeLines[n] = reparsed.beforeLines[i];
+      tree.follows[n] = reparsed.follows[i];
+      tree.followLines[n] = reparsed.followLines[i];
+      tree.eventFroms[n] = eventBase + reparsed.eventFroms[i];
+      tree.eventTos[n] = eventBase + reparsed.eventTos[i];
+    }
+  }
+
+  /** ==========================================================================================
+          The parse tree
+      ========================================================================================== **/
+
+  /**
+   * Gets the incremental lexer holding the source and its tokens.
+   * @return the incremental lexer.
+   */
+  public IncrementalLexer getTokens() {
+    return lexer;
+  }
+
+  /**
+   * Gets the number of nodes in the parse tree, which are numbered in the order their non-terminals began.
+   * The tree is only complete once the program has compiled.
+   * @return the number of nodes.
+   */
+  public int getNodeCount() {
+    return tree.count;
+  }
+
+  /**
+   * Gets the name of the non-terminal of a node.
+   * @param node the index of the node.
+   * @return the name, such as "IfStatement".
+   */
+  public String getNodeName(int node) {
+    return kindNames.get(tree.kinds[node]);
+  }
+
+  /**
+   * Gets the node enclosing a node.
+   * @param node the index of the node.
+   * @return the index of the enclosing node, or -1 for the root.
+   */
+  public int getNodeParent(int node) {
+    return tree.parents[node];
+  }
+
+  /**
+   * Gets the index following the last node enclosed by a node.
+   * @param node the index of the node.
+   * @return the index following its subtree.
+   */
+  public int getNodeEnd(int node) {
+    return tree.ends[node];
+  }
+
+  /**
+   * Gets the offset of the first token of a node.
+   * @param node the index of the node.
+   * @return the offset in the source.
+   */
+  public int getNodeStart(int node) {
+    return tree.starts[node];
+  }
+
+  /**
+   * Gets the offset following the last token of a node.
+   * @param node the index of the node.
+   * @return the offset in the source.
+   */
+  public int getNodeStop(int node) {
+    return tree.stops[node];
+  }
+}
@@ -9,6 +9,11 @@
  *
  **/
 import java.io.* ;
+import java.nio.* ;
+import java.nio.channels.* ;
+import java.nio.charset.* ;
+import java.nio.file.* ;
+import java.util.Arrays ;
 
 public class LexicalAnalyser
 {
@@ -38,10 +43,24 @@ public class LexicalAnalyser
 	/** The EOF character. */
 	private static final char EOF = '\000' ;
 
+	/** The size of the reserved word hash table, a power of two at least twice maxTableSize. */
+	private static final int hashTableSize = 512 ;
+
 	/** A list of symbols. */
 	private ReservedWord[] symbols = new ReservedWord[maxTableSize] ;
 	/** Holds the current number of symbols held. */
 	private int noOfSymbols ;
+	/** Open addressed hash table holding (index into symbols + 1), or 0 for an empty slot. */
+	private int[] symbolHash = new int[hashTableSize] ;
+	/** The length of the longest reserved word, so that longer identifiers need not be looked up. */
+	private int longestReservedWord ;
+
+	/** The canonical text of each identifier seen so far, indexed by identifier number. */
+	private String[] identifiers = new String[64] ;
+	/** Holds the number of distinct identifiers seen so far. */
+	private int noOfIdentifiers ;
+	/** Open addressed hash table holding (identifier number + 1), or 0 for an empty slot. */
+	private int[] identifierHash = new int[128] ;
 
 	/** Is this the first time we have been called? */
 	private boolean firstCall ;
@@ -57,9 +76,36 @@ public class LexicalAnalyser
 	private String currentLine ;
 	private int currentOffset,
 			currentLineNumber ;
+	/** The offset of currentCharacter in the source, counting each line end as one character. */
+	private int currentCharacterOffset ;
+	/** The number of characters delivered so far when reading line by line. */
+	private int charactersRead ;
+	/** The offset of the first character of the line holding currentCharacter. */
+	private int lineStart ;
 
 	/* input buffer */
-	private StringBuffer currentText = new StringBuffer() ;
+	private StringBuilder currentText = new StringBuilder() ;
+
+	/* The token most recently scanned by advance(). */
+	private int tokenSymbol,
+			tokenStart,
+			tokenLength,
+			tokenLine ;
+	/** Is the text of the current token held in currentText? */
+	private boolean tokenTextBuffered ;
+	/** The identifier number of the current token, or -1 if it is not an identifier. */
+	private int tokenId ;
+	/** The column of the first character of the current token in its line. */
+	private int tokenColumn ;
+
+	/** The whole source, when it has been read in one go rather than line by line. */
+	private char[] sourceText ;
+	/** The number of characters held in sourceText, after line ends have been normalised. */
+	private int sourceLength ;
+	/** The position in sourceText of the next character to be read. */
+	private int sourcePosition ;
+	/** Have characters been read since the last newline in sourceText? */
+	private boolean lineOpen ;
 
 	/** Adds a reserved word to the internal symbol table.
 
@@ -70,13 +116,120 @@ public class LexicalAnalyser
 	{
 		symbols[noOfSymbols] = new ReservedWord(t, s) ;
 		noOfSymbols++ ;
+
+		int hash = 0 ;
+		for (int i = 0 ; i < t.length() ; i++)
+			hash = 31 * hash + t.charAt(i) ;
+		int slot = hashSlot(hash) ;
+		while (symbolHash[slot] != 0)
+			slot = (slot + 1) & (hashTableSize - 1) ;
+		symbolHash[slot] = noOfSymbols ;
+
+		if (t.length() > longestReservedWord)
+			longestReservedWord = t.length() ;
 	} // end of method setReservedWord
 
+	/** Maps a hash code onto a starting slot of the reserved word hash table.
+
+	  @param hash The hash of the lower case word.
+	  @return the slot at which to start probing.
+	 */
+	private static int hashSlot(int hash)
+	{
+		return (hash ^ (hash >>> 16)) & (hashTableSize - 1) ;
+	} // end of method hashSlot
+
+	/** Looks up the word held in currentText in the reserved word table, ignoring case.
+
+	  @param hash The hash of currentText with each character in lower case.
+	  @return the index of the word in symbols, or -1 if it is not reserved.
+	 */
+	private int findReservedWord(int hash)
+	{
+		int length = currentText.length() ;
+		if (length > longestReservedWord)
+			return -1 ;
+
+		for (int slot = hashSlot(hash) ; symbolHash[slot] != 0 ; slot = (slot + 1) & (hashTableSize - 1))
+		{
+			String t = symbols[symbolHash[slot] - 1].text ;
+			if (t.length() != length)
+				continue ;
+			int i = 0 ;
+			while ((i < length) && (Character.toLowerCase(currentText.charAt(i)) == t.charAt(i)))
+				i++ ;
+			if (i == length)
+				return symbolHash[slot] - 1 ;
+		}
+		return -1 ;
+	} // end of method findReservedWord
+
+
+	/** Returns the number of the identifier held in currentText, adding it to
+	  the identifier table if this is its first occurrence.
+
+	  @param hash The hash of currentText, as String.hashCode() would compute it.
+	  @return the identifier number, indexing the identifier table.
+	 */
+	private int internIdentifier(int hash)
+	{
+		int mask = identifierHash.length - 1 ;
+		int length = currentText.length() ;
+		int slot = hash & mask ;
+		for ( ; identifierHash[slot] != 0 ; slot = (slot + 1) & mask)
+		{
+			String t = identifiers[identifierHash[slot] - 1] ;
+			if ((t.hashCode() != hash) || (t.length() != length))
+				continue ;
+			int i = 0 ;
+			while ((i < length) && (currentText.charAt(i) == t.charAt(i)))
+				i++ ;
+			if (i == length)
+				return identifierHash[slot] - 1 ;
+		}
+
+		if (noOfIdentifiers == identifiers.length)
+			identifiers = Arrays.copyOf(identifiers, 2 * noOfIdentifiers) ;
+		identifiers[noOfIdentifiers] = currentText.toString() ;
+		identifierHash[slot] = ++noOfIdentifiers ;
+
+		if (2 * noOfIdentifiers > identifierHash.length)
+		{
+			identifierHash = new int[2 * identifierHash.length] ;
+			mask = identifierHash.length - 1 ;
+			for (int id = 0 ; id < noOfIdentifiers ; id++)
+			{
+				slot = identifiers[id].hashCode() & mask ;
+				while (identifierHash[slot] != 0)
+					slot = (slot + 1) & mask ;
+				identifierHash[slot] = id + 1 ;
+			}
+		}
+		return noOfIdentifiers - 1 ;
+	} // end of method internIdentifier
+
+	/** Returns the canonical text of a numbered identifier.  Every token for
+	  the same identifier shares this String.
+
+	  @param id The identifier number, as returned by getTokenId().
+	  @return the text of the identifier.
+	 */
+	public String getIdentifier(int id)
+	{
+		return identifiers[id] ;
+	} // end of method getIdentifier
+
+	/** @return the number of distinct identifiers seen so far. */
+	public int getIdentifierCount()
+	{
+		return noOfIdentifiers ;
+	} // end of method getIdentifierCount
 
 	/** Sets all initial variables and adds the language's reserved words to the symbol table. */
 	private void initialiseScanner()
 	{
 		noOfSymbols = 0 ;
+		longestReservedWord = 0 ;
 		setReservedWord("begin", Token.beginSymbol) ;
 		setReservedWord("call", Token.callSymbol) ;
 		setReservedWord("do", Token.doSymbol) ;
@@ -113,6 +266,199 @@ public class LexicalAnalyser
 		currentLineNumber = 0 ;
 	} // end of constructor method
 
+	/** Creates a new LexicalAnalyser which scans the first length characters of
+	  the given array with a single cursor.  Line ends must already have been
+	  normalised by normaliseLineEnds.
+
+	  @param fileName The name to report for this source.
+	  @param text The characters of the source.
+	  @param length The number of characters of text to use.
+	 */
+	private LexicalAnalyser(String fileName, char[] text, int length)
+	{
+		initialiseScanner() ;
+
+		sourceFileName = fileName ;
+		sourceText = text ;
+		sourceLength = length ;
+		sourcePosition = 0 ;
+		lineOpen = false ;
+		firstCall = true ;
+		currentLineNumber = 0 ;
+	} // end of constructor method
+
+	/** Creates a new LexicalAnalyser which maps the given file into memory and
+	  scans it from a single character array rather than line by line.  The
+	  tokens and line numbers produced are the same as for the constructor
+	  taking a file name.
+
+	  @param fileName The file to read.
+	  @throws IOException if the file cannot be mapped or read.
+	  @return a lexical analyser positioned at the start of the file.
+	 */
+	public static LexicalAnalyser mapFile(String fileName) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ))
+		{
+			return fromSource(fileName, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())) ;
+		}
+	} // end of method mapFile
+
+	/** Creates a new LexicalAnalyser over source text held in memory.
+
+	  @param name The name to report for this source, in place of a file name.
+	  @param source The source text.
+	  @return a lexical analyser positioned at the start of the source.
+	 */
+	public static LexicalAnalyser fromSource(String name, CharSequence source)
+	{
+		char[] text = new char[source.length()] ;
+		if (source instanceof String)
+			((String) source).getChars(0, text.length, text, 0) ;
+		else
+		{
+			for (int i = 0 ; i < text.length ; i++)
+				text[i] = source.charAt(i) ;
+		}
+		return new LexicalAnalyser(name, text, normaliseLineEnds(text, text.length)) ;
+	} // end of method fromSource
+
+	/** Creates a new LexicalAnalyser over source text held in a character array.
+	  The array is copied, so the caller may go on to reuse it.
+
+	  @param name The name to report for this source, in place of a file name.
+	  @param source The source text.
+	  @return a lexical analyser positioned at the start of the source.
+	 */
+	public static LexicalAnalyser fromSource(String name, char[] source)
+	{
+		char[] text = Arrays.copyOf(source, source.length) ;
+		return new LexicalAnalyser(name, text, normaliseLineEnds(text, text.length)) ;
+	} // end of method fromSource
+
+	/** Creates a new LexicalAnalyser over the source text read from a Reader,
+	  which is read to its end but not closed.
+
+	  @param name The name to report for this source, in place of a file name.
+	  @param source The reader to take the source text from.
+	  @throws IOException if the reader fails.
+	  @return a lexical analyser positioned at the start of the source.
+	 */
+	public static LexicalAnalyser fromSource(String name, Reader source) throws IOException
+	{
+		char[] text = new char[8192] ;
+		int length = 0,
+			n ;
+		while ((n = source.read(text, length, text.length - length)) >= 0)
+		{
+			length += n ;
+			if (length == text.length)
+				text = Arrays.copyOf(text, 2 * length) ;
+		}
+		return new LexicalAnalyser(name, text, normaliseLineEnds(text, length)) ;
+	} // end of method fromSource
+
+	/** Creates a new LexicalAnalyser over encoded source text held in a buffer,
+	  such as a mapped file, decoding it with the platform's default charset as
+	  FileReader would.  The buffer's remaining bytes are consumed.
+
+	  @param name The name to report for this source, in place of a file name.
+	  @param source The encoded source text.
+	  @return a lexical analyser positioned at the start of the source.
+	 */
+	public static LexicalAnalyser fromSource(String name, ByteBuffer source)
+	{
+		CharBuffer chars ;
+		try
+		{
+			chars = Charset.defaultCharset().newDecoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE)
+					.decode(source) ;
+		}
+		catch (CharacterCodingException e)
+		{
+			// Cannot happen: malformed and unmappable input are both replaced
+			throw new IllegalStateException(e) ;
+		}
+		return new LexicalAnalyser(name, chars.array(), normaliseLineEnds(chars.array(), chars.limit())) ;
+	} // end of method fromSource
+
+	/** Rewrites "\r\n" and lone '\r' line ends as '\n', as BufferedReader.readLine()
+	  would see them, compacting the array in place.
+
+	  @param text The characters to normalise.
+	  @param length The number of characters of text in use.
+	  @return the number of characters in use after normalisation.
+	 */
+	static int normaliseLineEnds(char[] text, int length)
+	{
+		int to = 0 ;
+		for (int from = 0 ; from < length ; from++)
+		{
+			char c = text[from] ;
+			if (c == '\r')
+			{
+				if ((from + 1 < length) && (text[from + 1] == '\n'))
+					from++ ;
+				c = '\n' ;
+			}
+			text[to++] = c ;
+		}
+		return to ;
+	} // end of method normaliseLineEnds
+
+	/** Creates a new LexicalAnalyser which scans the given array in place rather
+	  than a copy of it, for an owner such as IncrementalLexer which edits the
+	  source and then restarts the scan.
+
+	  @param name The name to report for this source, in place of a file name.
+	  @param text The source text, with line ends already normalised by normaliseLineEnds.
+	  @param length The number of characters of text in use.
+	  @return a lexical analyser positioned at the start of the source.
+	 */
+	static LexicalAnalyser overText(String name, char[] text, int length)
+	{
+		return new LexicalAnalyser(name, text, length) ;
+	} // end of method overText
+
+	/** Replaces the source scanned by a lexical analyser created by overText,
+	  keeping its identifier table so that identifier numbers stay the same.
+	  The scan must then be restarted.
+
+	  @param text The new source text, with line ends already normalised.
+	  @param length The number of characters of text in use.
+	 */
+	void replaceSource(char[] text, int length)
+	{
+		sourceText = text ;
+		sourceLength = length ;
+	} // end of method replaceSource
+
+	/** Restarts the scan of source held in memory so that the next token is
+	  scanned from the given offset, as if it had been reached by scanning
+	  from the start.  The offset should be the start of a token previously
+	  scanned there, or 0, and the line that token's line.
+
+	  @param offset The offset to scan from, as returned by getTokenStart().
+	  @param line The line number of the token at that offset, as returned by getTokenLine().
+	  @throws IllegalStateException if the source is being read line by line from a file.
+	 */
+	public void restart(int offset, int line)
+	{
+		if (sourceText == null)
+			throw new IllegalStateException("cannot restart a lexical analyser reading " + sourceFileName + " line by line") ;
+
+		sourcePosition = offset ;
+		lineOpen = (offset > 0) && (offset <= sourceLength) && (sourceText[offset - 1] != '\n') ;
+		currentLineNumber = line ;
+		firstCall = true ;
+
+		lineStart = Math.min(offset, sourceLength) ;
+		while ((lineStart > 0) && (sourceText[lineStart - 1] != '\n'))
+			lineStart-- ;
+	} // end of method restart
+
 	/**
 	 * Simply returns the current loaded input file name
 	 */
@@ -126,6 +472,27 @@ public class LexicalAnalyser
 	 */
 	private void getNextCharacter() throws IOException
 	{
+		if (sourceText != null)
+		{
+			currentCharacterOffset = sourcePosition ;
+			if (sourcePosition < sourceLength)
+			{
+				currentCharacter = sourceText[sourcePosition++] ;
+				lineOpen = (currentCharacter != '\n') ;
+			}
+			else if (lineOpen)
+			{
+				// readLine() ends an unterminated last line as if it had a newline
+				currentCharacter = '\n' ;
+				sourcePosition++ ;
+				lineOpen = false ;
+			}
+			else
+				currentCharacter = EOF ;
+			return ;
+		}
+
+		currentCharacterOffset = charactersRead ;
 		if (currentLine == null)
 			currentCharacter = EOF ;
 		else if (currentOffset >= currentLine.length())
@@ -133,21 +500,44 @@ public class LexicalAnalyser
 			currentLine = sourceFile.readLine() ;
 			currentOffset = 0 ;
 			currentCharacter = '\n' ;
+			charactersRead++ ;
 		}
 		else
 		{
 			currentCharacter = currentLine.charAt(currentOffset) ;
 			currentOffset++ ;
+			charactersRead++ ;
 		}
 	} // end of method getNextCharacter
 
-	/** Returns the next token from the source file.  Repeatedly calling this
-	  will return each token in the file, and eventually null.
+	/** Records the token just scanned as the current token.
+
+	  @param symbol The type of the token, typically a class constant from Token.
+	  @param start The offset of the first character of the token.
+	  @param buffered Whether the text of the token is held in currentText.
+	  @return the type of the token.
+	 */
+	private int setToken(int symbol, int start, boolean buffered)
+	{
+		tokenSymbol = symbol ;
+		tokenStart = start ;
+		tokenLength = currentCharacterOffset - start ;
+		tokenLine = currentLineNumber ;
+		tokenColumn = start - lineStart ;
+		tokenTextBuffered = buffered ;
+		tokenId = -1 ;
+		return symbol ;
+	} // end of method setToken
+
+	/** Scans the next token of the source without creating a Token for it.
+	  The details of the token are then available from getTokenSymbol(),
+	  getTokenStart(), getTokenLength(), getTokenLine() and getTokenText()
+	  until advance() is called again.
 
 	  @throws IOException in the event that the file cannot be read.
-	  @return the next token from the source file.
+	  @return the type of the token, as a class constant from Token.
 	 */
-	public Token getNextToken() throws IOException
+	public int advance() throws IOException
 	{
 		if (firstCall)
 		{
@@ -160,6 +550,7 @@ public class LexicalAnalyser
 		{
 			if (currentCharacter == '-')
 			{
+				int start = currentCharacterOffset ;
 				getNextCharacter() ;
 				if (currentCharacter == '-')
 				{
@@ -167,34 +558,39 @@ public class LexicalAnalyser
 						getNextCharacter() ;
 				}
 				else
-					return new Token(Token.minusSymbol, "-", currentLineNumber) ;
+					return setToken(Token.minusSymbol, start, false) ;
 			}
 
 			if (currentCharacter == '\n')
+			{
 				currentLineNumber++ ;
+				lineStart = currentCharacterOffset + 1 ;
+			}
 			getNextCharacter() ;
 		}
 
+		int start = currentCharacterOffset ;
 		if (Character.isLetter(currentCharacter))
 		{
 			currentText.setLength(0) ;
+			int hash = 0,
+				exactHash = 0 ;
 			while ((Character.isLetter(currentCharacter)) ||
 					(Character.isDigit(currentCharacter)))
 			{
 				currentText.append(currentCharacter) ;
+				hash = 31 * hash + Character.toLowerCase(currentCharacter) ;
+				exactHash = 31 * exactHash + currentCharacter ;
 				getNextCharacter() ;
 			}
 
-			int i = 0 ;
-			String t = (new String(currentText)).toLowerCase() ;
-			while ((i < noOfSymbols) &&
-					(!t.equals(symbols[i].text)))
-				i++ ;
+			int i = findReservedWord(hash) ;
+			if (i >= 0)
+				return setToken(symbols[i].symbol, start, true) ;
 
-			if (i < noOfSymbols)
-				return new Token(symbols[i].symbol, currentText, currentLineNumber) ;
-			else
-				return new Token(Token.identifier, currentText, currentLineNumber) ;
+			setToken(Token.identifier, start, true) ;
+			tokenId = internIdentifier(exactHash) ;
+			return Token.identifier ;
 		}
 		else if (Character.isDigit(currentCharacter))
 		{
@@ -214,19 +610,25 @@ public class LexicalAnalyser
 					getNextCharacter() ;
 				}
 			}
-			return new Token(Token.numberConstant, currentText, currentLineNumber) ;
+			return setToken(Token.numberConstant, start, true) ;
 		}
 		else if (currentCharacter == '"')
 		{
+			int column = start - lineStart ;
 			getNextCharacter() ;
 			currentText.setLength(0) ;
-			while (currentCharacter != '"')
+			while ((currentCharacter != '"') && (currentCharacter != EOF))
 			{
+				// A string running over a line end does not count the line, but later columns are measured from it
+				if (currentCharacter == '\n')
+					lineStart = currentCharacterOffset + 1 ;
 				currentText.append(currentCharacter) ;
 				getNextCharacter() ;
 			}
 			getNextCharacter() ;
-			return new Token(Token.stringConstant, currentText, currentLineNumber) ;
+			setToken(Token.stringConstant, start, true) ;
+			tokenColumn = column ;
+			return Token.stringConstant ;
 		}
 		else if (currentCharacter == ':')
 		{
@@ -234,10 +636,10 @@ public class LexicalAnalyser
 			if (currentCharacter == '=')
 			{
 				getNextCharacter() ;
-				return new Token(Token.becomesSymbol, ":=", currentLineNumber) ;
+				return setToken(Token.becomesSymbol, start, false) ;
 			}
 			else
-				return new Token(Token.colonSymbol, ":", currentLineNumber) ;
+				return setToken(Token.colonSymbol, start, false) ;
 		}
 		else if (currentCharacter == '>')
 		{
@@ -245,10 +647,10 @@ public class LexicalAnalyser
 			if (currentCharacter == '=')
 			{
 				getNextCharacter() ;
-				return new Token(Token.greaterEqualSymbol, ">=", currentLineNumber) ;
+				return setToken(Token.greaterEqualSymbol, start, false) ;
 			}
 			else
-				return new Token(Token.greaterThanSymbol, ">", currentLineNumber) ;
+				return setToken(Token.greaterThanSymbol, start, false) ;
 		}
 		else if (currentCharacter == '<')
 		{
@@ -256,10 +658,10 @@ public class LexicalAnalyser
 			if (currentCharacter == '=')
 			{
 				getNextCharacter() ;
-				return new Token(Token.lessEqualSymbol, "<=", currentLineNumber) ;
+				return setToken(Token.lessEqualSymbol, start, false) ;
 			}
 			else
-				return new Token(Token.lessThanSymbol, "<", currentLineNumber) ;
+				return setToken(Token.lessThanSymbol, start, false) ;
 		}
 		else if (currentCharacter == '/')
 		{
@@ -267,56 +669,126 @@ public class LexicalAnalyser
 			if (currentCharacter == '=')
 			{
 				getNextCharacter() ;
-				return new Token(Token.notEqualSymbol, "/=", currentLineNumber) ;
+				return setToken(Token.notEqualSymbol, start, false) ;
 			}
 			else
-				return new Token(Token.divideSymbol, "/", currentLineNumber) ;
+				return setToken(Token.divideSymbol, start, false) ;
 		}
 		else if (currentCharacter == '=')
 		{
 			getNextCharacter() ;
-			return new Token(Token.equalSymbol, "=", currentLineNumber) ;
+			return setToken(Token.equalSymbol, start, false) ;
 		}
 		else if (currentCharacter == ',')
 		{
 			getNextCharacter() ;
-			return new Token(Token.commaSymbol, ",", currentLineNumber) ;
+			return setToken(Token.commaSymbol, start, false) ;
 		}
 		else if (currentCharacter == ';')
 		{
 			getNextCharacter() ;
-			return new Token(Token.semicolonSymbol, ";", currentLineNumber) ;
+			return setToken(Token.semicolonSymbol, start, false) ;
 		}
 		else if (currentCharacter == '+')
 		{
 			getNextCharacter() ;
-			return new Token(Token.plusSymbol, "+", currentLineNumber) ;
+			return setToken(Token.plusSymbol, start, false) ;
 		}
 		else if (currentCharacter == '*')
 		{
 			getNextCharacter() ;
-			return new Token(Token.timesSymbol, "*", currentLineNumber) ;
+			return setToken(Token.timesSymbol, start, false) ;
 		}
 		else if (currentCharacter == '(')
 		{
 			getNextCharacter() ;
-			return new Token(Token.leftParenthesis, "(", currentLineNumber) ;
+			return setToken(Token.leftParenthesis, start, false) ;
 		}
 		else if (currentCharacter == ')')
 		{
 			getNextCharacter() ;
-			return new Token(Token.rightParenthesis, ")", currentLineNumber) ;
+			return setToken(Token.rightParenthesis, start, false) ;
 		}
 		else if (currentCharacter == EOF)
 		{
-			return new Token(Token.eofSymbol, "", currentLineNumber) ;
+			return setToken(Token.eofSymbol, start, false) ;
 		}
 		else
 		{
-			currentText = new StringBuffer(currentCharacter) ;
 			getNextCharacter() ;		// added 21st January 2005
-			return new Token(Token.errorSymbol, currentText, currentLineNumber) ;
+			return setToken(Token.errorSymbol, start, false) ;
 		}
+	} // end of method advance
+
+	/** @return the type of the current token, as a class constant from Token. */
+	public int getTokenSymbol()
+	{
+		return tokenSymbol ;
+	} // end of method getTokenSymbol
+
+	/** @return the offset in the source of the first character of the current
+	  token (its opening quote, for a string), counting each line end as one
+	  character. */
+	public int getTokenStart()
+	{
+		return tokenStart ;
+	} // end of method getTokenStart
+
+	/** @return the number of source characters making up the current token. */
+	public int getTokenLength()
+	{
+		return tokenLength ;
+	} // end of method getTokenLength
+
+	/** @return the line number of the current token. */
+	public int getTokenLine()
+	{
+		return tokenLine ;
+	} // end of method getTokenLine
+
+	/** @return the identifier number of the current token, or -1 if it is not an identifier. */
+	public int getTokenId()
+	{
+		return tokenId ;
+	} // end of method getTokenId
+
+	/** @return the column of the first character of the current token in its
+	  line, counting from 0. */
+	public int getTokenColumn()
+	{
+		return tokenColumn ;
+	} // end of method getTokenColumn
+
+	/** Returns the text of the current token as getNextToken() would report it.
+	  Only reserved words, numbers and strings need a new String; identifiers
+	  share their canonical text and every other symbol shares a constant.
+
+	  @return the text of the current token.
+	 */
+	public String getTokenText()
+	{
+		if (tokenId >= 0)
+			return identifiers[tokenId] ;
+		else if (tokenTextBuffered)
+			return currentText.toString() ;
+		else if ((tokenSymbol == Token.eofSymbol) || (tokenSymbol == Token.errorSymbol))
+			return "" ;
+		else
+			return Token.getName(tokenSymbol) ;
+	} // end of method getTokenText
+
+	/** Returns the next token from the source file.  Repeatedly calling this
+	  will return each token in the file, and eventually null.
+
+	  @throws IOException in the event that the file cannot be read.
+	  @return the next token from the source file.
+	 */
+	public Token getNextToken() throws IOException
+	{
+		int symbol = advance() ;
+		Token token = new Token(symbol, getTokenText(), tokenLine, tokenId) ;
+		token.column = tokenColumn ;
+		return token ;
 	} // end of method getNextToken
 
 	/** Entry point to text Lexer */
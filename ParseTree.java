@@ -0,0 +1,241 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Code: ParseTree Class   ParseTree.java
+ *
+ * Parse tree of a program, with a node for each non-terminal and each terminal, built by TreeGenerate.
+ * Nodes are not objects: each is an index into parallel arrays, numbered in the order the parse reached
+ * them, so that every node's subtree is the run of nodes from it up to getEnd(). The whole tree costs
+ * about 20 bytes per node however large the program, and nothing but the arrays is allocated as it grows.
+ */
+public class ParseTree {
+
+  /**
+   * The kind of a node: one for each non-terminal of the grammar, and one for terminals.
+   */
+  public enum Kind {
+    STATEMENT_PART("StatementPart"),
+    STATEMENT_LIST("StatementList"),
+    STATEMENT("Statement"),
+    ASSIGNMENT_STATEMENT("AssignmentStatement"),
+    IF_STATEMENT("IfStatement"),
+    WHILE_STATEMENT("WhileStatement"),
+    PROCEDURE_STATEMENT("ProcedureStatement"),
+    UNTIL_STATEMENT("UntilStatement"),
+    FOR_STATEMENT("ForStatement"),
+    ARGUMENT_LIST("ArgumentList"),
+    CONDITION("Condition"),
+    CONDITIONAL_OPERATOR("ConditionalOperator"),
+    EXPRESSION("Expression"),
+    TERM("Term"),
+    FACTOR("Factor"),
+    TERMINAL("Terminal");
+
+    public final String name;  /** The name of the non-terminal, as the syntax analyser reports it **/
+
+    private Kind(String name) {
+      this.name = name;
+    }
+
+    private static final Map<String, Kind> BY_NAME = new HashMap<String, Kind>();  /** Each kind by its name **/
+
+    static {
+      for (Kind kind : values()) {
+        BY_NAME.put(kind.name, kind);
+      }
+    }
+
+    /**
+     * Gets the kind of a non-terminal from its name.
+     * @param name the name of the non-terminal, as the syntax analyser reports it.
+     * @return the kind.
+     * @throws IllegalArgumentException if the name is not that of a non-terminal.
+     */
+    public static Kind of(String name) {
+      Kind kind = BY_NAME.get(name);
+      if (kind == null) {
+        throw new IllegalArgumentException("no non-terminal named " + name);
+      }
+      return kind;
+    }
+  }
+
+  private static final Kind[] KINDS = Kind.values();  /** Each kind by its ordinal **/
+
+  private byte[] kinds;     /** Ordinal of the kind of each node **/
+  private byte[] symbols;   /** Symbol of each terminal, as a class constant from Token **/
+  private int[] parents;    /** Enclosing node of each node, or -1 **/
+  private int[] ends;       /** Node following the subtree of each node **/
+  private int[] lines;      /** Line of each terminal, and of the first terminal of each non-terminal **/
+  private String[] texts;   /** Text of each terminal, shared with its Token **/
+  private int count;        /** Number of nodes **/
+
+  private int[] open = new int[64];  /** Non-terminals begun but not yet finished **/
+  private int depth;                 /** Number of non-terminals open **/
+  private int unplaced;              /** Number of innermost open non-terminals with no terminal yet **/
+
+  /**
+   * Creates an empty tree.
+   * @param capacity the number of nodes to allow for before growing.
+   */
+  ParseTree(int capacity) {
+    capacity = Math.max(capacity, 16);
+    kinds = new byte[capacity];
+    symbols = new byte[capacity];
+    parents = new int[capacity];
+    ends = new int[capacity];
+    lines = new int[capacity];
+    texts = new String[capacity];
+  }
+
+  /**
+   * Adds a node as the last child of the innermost open non-terminal.
+   * @param kind the kind of the node.
+   * @return the index of the node.
+   */
+  private int add(Kind kind) {
+    if (count == kinds.length) {
+      int capacity = 2 * count;
+      kinds = Arrays.copyOf(kinds, capacity);
+      symbols = Arrays.copyOf(symbols, capacity);
+      parents = Arrays.copyOf(parents, capacity);
+      ends = Arrays.copyOf(ends, capacity);
+      lines = Arrays.copyOf(lines, capacity);
+      texts = Arrays.copyOf(texts, capacity);
+    }
+    kinds[count] = (byte) kind.ordinal();
+    parents[count] = (depth > 0) ? open[depth - 1] : -1;
+    ends[count] = count + 1;
+    return count++;
+  }
+
+  /**
+   * Begins a non-terminal, which encloses everything added until it is finished.
+   * @param kind the kind of the non-terminal.
+   */
+  void begin(Kind kind) {
+    int node = add(kind);
+    if (depth == open.length) {
+      open = Arrays.copyOf(open, 2 * depth);
+    }
+    open[depth++] = node;
+    unplaced++;
+  }
+
+  /**
+   * Finishes the innermost open non-terminal.
+   */
+  void finish() {
+    ends[open[--depth]] = count;
+    if (unplaced > 0) {
+      unplaced--;
+    }
+  }
+
+  /**
+   * Adds a terminal, which also gives the line of any open non-terminals it is the first terminal of.
+   * @param token the token accepted.
+   */
+  void terminal(Token token) {
+    int node = add(Kind.TERMINAL);
+    symbols[node] = (byte) token.symbol;
+    lines[node] = token.lineNumber;
+    texts[node] = token.text;
+    for (; unplaced > 0; unplaced--) {
+      lines[open[depth - unplaced]] = token.lineNumber;
+    }
+  }
+
+  /**
+   * Finishes every open non-terminal, as when the parse stopped at an error.
+   */
+  void close() {
+    while (depth > 0) {
+      finish();
+    }
+  }
+
+  /**
+   * Gets the number of nodes in the tree.
+   * @return the number of nodes; the root is node 0 if there are any.
+   */
+  public int getNodeCount() {
+    return count;
+  }
+
+  /**
+   * Gets the kind of a node.
+   * @param node the index of the node.
+   * @return the kind.
+   */
+  public Kind getKind(int node) {
+    return KINDS[kinds[node]];
+  }
+
+  /**
+   * Gets the node enclosing a node.
+   * @param node the index of the node.
+   * @return the index of the enclosing node, or -1 for the root.
+   */
+  public int getParent(int node) {
+    return parents[node];
+  }
+
+  /**
+   * Gets the node following the subtree of a node, so that its descendants are the nodes from node + 1 up to this.
+   * @param node the index of the node.
+   * @return the index following its subtree.
+   */
+  public int getEnd(int node) {
+    return ends[node];
+  }
+
+  /**
+   * Gets the first child of a node.
+   * @param node the index of the node.
+   * @return the index of the child, or -1 if it has none.
+   */
+  public int getFirstChild(int node) {
+    return (ends[node] > node + 1) ? node + 1 : -1;
+  }
+
+  /**
+   * Gets the next child of a node's parent.
+   * @param node the index of the node.
+   * @return the index of the sibling, or -1 if it is the last child.
+   */
+  public int getNextSibling(int node) {
+    int parent = parents[node];
+    int next = ends[node];
+    return (next < ((parent < 0) ? count : ends[parent])) ? next : -1;
+  }
+
+  /**
+   * Gets the symbol of a terminal.
+   * @param node the index of the node.
+   * @return the symbol, as a class constant from Token, or 0 for a non-terminal.
+   */
+  public int getSymbol(int node) {
+    return symbols[node];
+  }
+
+  /**
+   * Gets the text of a terminal, as its Token held it.
+   * @param node the index of the node.
+   * @return the text, or null for a non-terminal.
+   */
+  public String getText(int node) {
+    return texts[node];
+  }
+
+  /**
+   * Gets the line of a terminal, or of the first terminal of a non-terminal.
+   * @param node the index of the node.
+   * @return the line number.
+   */
+  public int getLine(int node) {
+    return lines[node];
+  }
+}
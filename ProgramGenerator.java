@@ -0,0 +1,385 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Code: ProgramGenerator Class   ProgramGenerator.java
+ *
+ * Generates programs of the language accepted by the syntax analyser, of any size and nesting depth,
+ * for benchmarks and stress tests. Programs mix number and string assignments, long expressions,
+ * if, while, until and for statements and procedure calls, and follow the declaration rules the
+ * analyser checks: a variable is only used after it has been assigned, variables first assigned
+ * within a for statement are not used after it, and strings are only concatenated with strings.
+ * Generation is deterministic for a given seed.
+ *
+ * Run "java ProgramGenerator statements [depth [seed]] [-invalid]" to write a program to standard output.
+ */
+public class ProgramGenerator {
+
+  private static final String[] OPERATORS = { "+", "-", "*", "/" };                   /** Arithmetic operators **/
+  private static final String[] COMPARISONS = { "<", "<=", ">", ">=", "=", "/=" };    /** Conditional operators **/
+  private static final String[] PROCEDURES = { "print", "put", "show" };             /** Names of procedures called **/
+
+  private final int statements;     /** Number of top level statements **/
+  private final int depth;          /** Deepest nesting of statements and of parentheses **/
+  private final Random random;      /** Source of every choice made **/
+  private int expressionLength = 8; /** Most factors in one expression **/
+  private int variables = 20;       /** Number of distinct number and string variables **/
+
+  private StringBuilder program;    /** The program being generated **/
+  private List<String> numbers;     /** Number variables declared at this point **/
+  private List<String> strings;     /** String variables declared at this point **/
+  private int statementCount;       /** Statements generated so far **/
+  private int faultAt;              /** Statement to replace by an error, or -1 **/
+  private int faultLine;            /** Line the error was placed on, counting from 0 as the lexer does, or -1 **/
+
+  /**
+   * Creates a generator.
+   * @param statements the number of top level statements in each program.
+   * @param depth the deepest nesting of compound statements, and of parentheses within expressions.
+   * @param seed the seed for the choices made, so that programs can be reproduced.
+   */
+  public ProgramGenerator(int statements, int depth, long seed) {
+    this.statements = statements;
+    this.depth = depth;
+    this.random = new Random(seed);
+  }
+
+  /**
+   * Sets the most factors in any one expression.
+   * @param expressionLength the number of factors, at least 1.
+   */
+  public void setExpressionLength(int expressionLength) {
+    this.expressionLength = Math.max(1, expressionLength);
+  }
+
+  /**
+   * Sets how many distinct number variables, and how many distinct string variables, programs assign.
+   * @param variables the number of variables of each type, at least 1.
+   */
+  public void setVariables(int variables) {
+    this.variables = Math.max(1, variables);
+  }
+
+  /**
+   * Generates a program which compiles.
+   * @return the source of the program.
+   */
+  public String generate() {
+    return generate(-1);
+  }
+
+  /**
+   * Generates a program containing exactly one error, placed at a random statement which may be
+   * nested inside others: an undeclared variable, a string added to a number, strings subtracted,
+   * or a missing keyword.
+   * @return the source of the program.
+   */
+  public String generateInvalid() {
+    return generate(random.nextInt(Math.max(1, statements)));
+  }
+
+  /**
+   * Gets the line of the error placed by the last call to generateInvalid, numbered as the lexical analyser
+   * numbers lines, so that it can be compared with the line of a Token or Diagnostic.
+   * @return the line number, counting from 0, or -1 if the last program generated has no error.
+   */
+  public int getFaultLine() {
+    return faultLine;
+  }
+
+  /**
+   * Generates a program.
+   * @param faultAt the number of the statement to replace by an error, or -1 for none.
+   * @return the source of the program.
+   */
+  private String generate(int faultAt) {
+    this.program = new StringBuilder();
+    this.numbers = new ArrayList<String>();
+    this.strings = new ArrayList<String>();
+    this.statementCount = 0;
+    this.faultAt = faultAt;
+    this.faultLine = -1;
+
+    // Declare one variable of each type first, so that conditions and calls always have something to use
+    program.append("begin\n  n0 := 0 ;\n  s0 := \"s0\"");
+    numbers.add("n0");
+    strings.add("s0");
+    for (int i = 0; i < statements; i++) {
+      program.append(" ;");
+      newLine(1);
+      statement(1);
+    }
+    return program.append("\nend\n").toString();
+  }
+
+  /**
+   * Generates a statement list.
+   * @param nesting the nesting depth of the statements.
+   */
+  private void statementList(int nesting) {
+    int count = 1 + random.nextInt(3);
+    for (int i = 0; i < count; i++) {
+      if (i > 0) {
+        program.append(" ;");
+      }
+      newLine(nesting);
+      statement(nesting);
+    }
+  }
+
+  /**
+   * Generates a statement, compound ones only while the nesting depth allows.
+   * @param nesting the nesting depth of the statement.
+   */
+  private void statement(int nesting) {
+    if (statementCount++ == faultAt) {
+      fault();
+      return;
+    }
+    int kind = random.nextInt(nesting <= depth ? 8 : 3);
+    switch (kind) {
+      case 0:
+        numberAssignment(nextName("n"));
+        break;
+      case 1:
+        stringAssignment();
+        break;
+      case 2:
+        call();
+        break;
+      case 3:
+        program.append("if ");
+        condition();
+        program.append(" then");
+        statementList(nesting + 1);
+        if (random.nextBoolean()) {
+          newLine(nesting);
+          program.append("else");
+          statementList(nesting + 1);
+        }
+        newLine(nesting);
+        program.append("end if");
+        break;
+      case 4:
+        program.append("while ");
+        condition();
+        program.append(" loop");
+        statementList(nesting + 1);
+        newLine(nesting);
+        program.append("end loop");
+        break;
+      case 5:
+        program.append("do");
+        statementList(nesting + 1);
+        newLine(nesting);
+        program.append("until ");
+        condition();
+        break;
+      case 6:
+        forStatement(nesting);
+        break;
+      default:
+        numberAssignment(nextName("n"));
+        break;
+    }
+  }
+
+  /**
+   * Generates a for statement. Variables first assigned within it, including its counter,
+   * are forgotten at its end just as the analyser removes them.
+   * @param nesting the nesting depth of the statement.
+   */
+  private void forStatement(int nesting) {
+    int numbersBefore = numbers.size();
+    int stringsBefore = strings.size();
+    String counter = "i" + nesting;
+    program.append("for (").append(counter).append(" := 0; ");
+    declare(numbers, counter);
+    program.append(counter).append(" < ").append(1 + random.nextInt(100)).append("; ");
+    program.append(counter).append(" := ").append(counter).append(" + 1) do");
+    statementList(nesting + 1);
+    newLine(nesting);
+    program.append("end loop");
+    numbers.subList(numbersBefore, numbers.size()).clear();
+    strings.subList(stringsBefore, strings.size()).clear();
+  }
+
+  /**
+   * Generates an assignment of an expression to a number variable.
+   * @param name the variable to assign.
+   */
+  private void numberAssignment(String name) {
+    program.append(name).append(" := ");
+    expression(1 + random.nextInt(expressionLength), 0);
+    declare(numbers, name);
+  }
+
+  /**
+   * Generates an assignment of a string constant, or of a concatenation of string variables, to a string variable.
+   */
+  private void stringAssignment() {
+    String name = nextName("s");
+    program.append(name).append(" := ");
+    if (random.nextInt(4) == 0) {
+      program.append('"').append(name).append(" text\"");
+    } else {
+      int count = 1 + random.nextInt(expressionLength);
+      for (int i = 0; i < count; i++) {
+        if (i > 0) {
+          program.append(" + ");
+        }
+        program.append(pick(strings));
+      }
+    }
+    declare(strings, name);
+  }
+
+  /**
+   * Generates a numeric expression built from declared number variables, number constants and
+   * parenthesised expressions.
+   * @param factors the number of factors at this level.
+   * @param parentheses the number of parentheses enclosing the expression.
+   */
+  private void expression(int factors, int parentheses) {
+    for (int i = 0; i < factors; i++) {
+      if (i > 0) {
+        program.append(' ').append(OPERATORS[random.nextInt(OPERATORS.length)]).append(' ');
+      }
+      if (parentheses < depth && factors > 1 && random.nextInt(4) == 0) {
+        program.append('(');
+        expression(1 + random.nextInt(factors), parentheses + 1);
+        program.append(')');
+      } else if (random.nextBoolean()) {
+        program.append(pick(numbers));
+      } else {
+        program.append(random.nextInt(1000));
+      }
+    }
+  }
+
+  /**
+   * Generates a condition comparing a declared variable with another of its type or with a constant.
+   */
+  private void condition() {
+    String operator = COMPARISONS[random.nextInt(COMPARISONS.length)];
+    if (random.nextInt(4) == 0) {
+      program.append(pick(strings)).append(' ').append(operator).append(' ');
+      program.append(random.nextBoolean() ? pick(strings) : "\"s0\"");
+    } else {
+      program.append(pick(numbers)).append(' ').append(operator).append(' ');
+      if (random.nextBoolean()) {
+        program.append(pick(numbers));
+      } else {
+        program.append(random.nextInt(1000));
+      }
+    }
+  }
+
+  /**
+   * Generates a procedure call with declared variables as its arguments.
+   */
+  private void call() {
+    program.append("call ").append(PROCEDURES[random.nextInt(PROCEDURES.length)]).append('(');
+    int count = 1 + random.nextInt(3);
+    for (int i = 0; i < count; i++) {
+      if (i > 0) {
+        program.append(", ");
+      }
+      program.append(random.nextBoolean() ? pick(numbers) : pick(strings));
+    }
+    program.append(')');
+  }
+
+  /**
+   * Generates a statement containing an error, and records its line.
+   */
+  private void fault() {
+    faultLine = 0;
+    for (int i = 0; i < program.length(); i++) {
+      if (program.charAt(i) == '\n') {
+        faultLine++;
+      }
+    }
+    switch (random.nextInt(4)) {
+      case 0:
+        program.append(nextName("n")).append(" := undeclared + 1");
+        break;
+      case 1:
+        program.append(nextName("n")).append(" := ").append(pick(numbers)).append(" + ").append(pick(strings));
+        break;
+      case 2:
+        program.append(nextName("s")).append(" := ").append(pick(strings)).append(" - ").append(pick(strings));
+        break;
+      default:
+        program.append("while ").append(pick(numbers)).append(" < 1 ").append(nextName("n")).append(" := 1 end loop");
+        break;
+    }
+  }
+
+  /**
+   * Chooses the name of a variable to assign, which may or may not have been declared already.
+   * @param prefix the prefix for variables of the type, n or s.
+   * @return the name.
+   */
+  private String nextName(String prefix) {
+    return prefix + random.nextInt(variables);
+  }
+
+  /**
+   * Chooses one of the variables declared at this point.
+   * @param declared the declared variables of a type, never empty.
+   * @return the name.
+   */
+  private String pick(List<String> declared) {
+    return declared.get(random.nextInt(declared.size()));
+  }
+
+  /**
+   * Records that a variable has been declared, if it has not been already.
+   * @param declared the declared variables of its type.
+   * @param name the variable.
+   */
+  private void declare(List<String> declared, String name) {
+    if (!declared.contains(name)) {
+      declared.add(name);
+    }
+  }
+
+  /**
+   * Starts a new line indented for the given nesting depth.
+   * @param nesting the nesting depth.
+   */
+  private void newLine(int nesting) {
+    program.append('\n');
+    for (int i = 0; i < nesting; i++) {
+      program.append("  ");
+    }
+  }
+
+  /**
+   * Writes a generated program to standard output.
+   * @param args the number of statements, optionally the depth and seed, and -invalid for a program with an error.
+   */
+  public static void main(String[] args) {
+    List<String> values = new ArrayList<String>();
+    boolean invalid = false;
+    for (String arg : args) {
+      if (arg.equals("-invalid")) {
+        invalid = true;
+      } else {
+        values.add(arg);
+      }
+    }
+    if (values.isEmpty() || values.size() > 3) {
+      System.err.println("Usage: java ProgramGenerator statements [depth [seed]] [-invalid]");
+      System.exit(1);
+    }
+    int statements = Integer.parseInt(values.get(0));
+    int depth = (values.size() > 1) ? Integer.parseInt(values.get(1)) : 3;
+    long seed = (values.size() > 2) ? Long.parseLong(values.get(2)) : 0;
+
+    ProgramGenerator generator = new ProgramGenerator(statements, depth, seed);
+    System.out.print(invalid ? generator.generateInvalid() : generator.generate());
+  }
+}
@@ -1,5 +1,6 @@
 import java.io.IOException;
 import java.lang.Character;
+import java.util.Arrays;
 
 /**
  * Code: Syntax Analyser   SyntaxAnalyser.java
@@ -15,6 +16,13 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
 
   private int numTabs = 0;  /** Indendation state **/
 
+  private String[] openNonterminals = new String[16];  /** Non terminals commenced but not yet finished, when tracing **/
+  private int openCount = 0;                          /** Number of open non terminals **/
+  private int scopeDepth = 0;                         /** Number of for statement scopes open **/
+  private int blockDepth = 0;                         /** Number of blocks open, from begin, then, loop or do to its end, when recovering **/
+  private boolean closingBlock = false;               /** Whether the last token accepted was an end, when recovering **/
+  private int enclosing = Token.beginSymbol;          /** Symbol opening the innermost statement list, with for standing for the do of a for statement **/
+
   /**
    * Initialises a new syntax analyser object for a given file.
    * @param filename the name of the file to read tokens from.
@@ -28,6 +36,33 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
     }
   }
 
+  /**
+   * Initialises a new syntax analyser object for source text held in memory, with no file I/O.
+   * @param name the name to report for the source, in place of a file name.
+   * @param source the source text.
+   */
+  public SyntaxAnalyser(String name, CharSequence source) {
+    this(LexicalAnalyser.fromSource(name, source));
+  }
+
+  /**
+   * Initialises a new syntax analyser object reading tokens from an existing lexical analyser.
+   * @param lex the lexical analyser to read tokens from.
+   */
+  public SyntaxAnalyser(LexicalAnalyser lex) {
+    this.lex = lex;
+  }
+
+  /**
+   * Initialises a new syntax analyser object reading tokens already lexed into a token buffer,
+   * which may be parsed any number of times without lexing the source again.
+   * @param tokens the token buffer to read tokens from.
+   */
+  public SyntaxAnalyser(TokenBuffer tokens) {
+    this.lex = tokens.getLexicalAnalyser();
+    this.tokens = tokens;
+  }
+
   /**
    * Accept a token based on context and indent the output for the new terminal.
    * @param symbol the next terminal symbol to accept at this point.
@@ -36,12 +71,19 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
    */
   @Override
   public void acceptTerminal(int symbol) throws IOException, CompilationException {
-    indent();
+    if (tracing) {
+      indent();
+    }
     if (nextToken.symbol == symbol) {
-      myGenerate.insertTerminal(nextToken);
-      nextToken = lex.getNextToken();
+      if (tracing) {
+        myGenerate.insertTerminal(nextToken);
+      }
+      if (recovering) {
+        countBlocks(symbol);
+      }
+      nextToken = readToken();
     } else {
-      reportError("expected " + Token.getName(symbol));
+      reportExpected(symbol);
     }
   }
 
@@ -59,11 +101,18 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
    */
   @Override
   public void _statementPart_() throws IOException, CompilationException {
+    // A previous parse of the same analyser may have stopped at an error partway in
+    numTabs = 0;
+    openCount = 0;
+    scopeDepth = 0;
+    blockDepth = 0;
+    closingBlock = false;
+    enclosing = Token.beginSymbol;
     try {
       commenceNonterminal("StatementPart");
 
       acceptTerminal(Token.beginSymbol);
-      _statementList_();
+      statementList(Token.beginSymbol);
       acceptTerminal(Token.endSymbol);
 
       finishNonterminal("StatementPart");
@@ -78,26 +127,75 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
 
     <statement list> ::= <statement> | <statement list> ; <statement>
 
+    Statements are parsed in a loop rather than by recursion, so long lists cannot overflow the stack.
+    Each statement after a semicolon still opens a nested StatementList in the output,
+    and all of them are closed once the last statement has been parsed.
+    When recovering from errors, a statement with an error is abandoned and the list carries on from the next statement,
+    and a statement following another with no semicolon between them is reported as a missing semicolon and parsed.
+    An else, end or until which cannot close the list is skipped, so that the statements after it are still checked.
+
    * @throws IOException if an IOException occured.
    * @throws CompilationException if a compilation error occured.
    */
   public void _statementList_() throws IOException, CompilationException {
+    int depth = 0;  // Number of nested StatementLists currently open
+    int opener = enclosing;
     try {
-      commenceNonterminal("StatementList");
-
-      _statement_();
+      while (true) {
+        commenceNonterminal("StatementList");
+        depth++;
+
+        int open = openCount;
+        int scopes = scopeDepth;
+        int blocks = blockDepth;
+        try {
+          _statement_();
+        } catch (CompilationException e) {
+          if (!recovering) {
+            throw e;
+          }
+          // A statement list nested in the abandoned statement may have been left as the innermost
+          enclosing = opener;
+          recover(e, open, scopes, blocks);
+        }
 
-      if (nextToken.symbol == Token.semicolonSymbol) {
+        if (nextToken.symbol != Token.semicolonSymbol) {
+          if (recovering && startsStatement(nextToken.symbol)) {
+            missingSemicolon();
+            continue;
+          }
+          break;
+        }
         acceptTerminal(Token.semicolonSymbol);
-        _statementList_();
       }
 
-      finishNonterminal("StatementList");
+      for (int i = 0; i < depth; i++) {
+        finishNonterminal("StatementList");
+      }
     } catch (CompilationException e) {
-      throw new CompilationException("compilation error parsing _statementList_", nextToken.lineNumber, e);
+      // Report the error once for each open StatementList, as the recursive form would, up to as many as the trace
+      // can show, so that an error after many statements does not build a cause for each of them
+      int wrappers = Math.min(depth, CompilationException.MAX_TRACE_DEPTH);
+      for (int i = 0; i < wrappers; i++) {
+        e = new CompilationException("compilation error parsing _statementList_", nextToken.lineNumber, e);
+      }
+      throw e;
     }
   }
 
+  /**
+   * Parses a statement list, noting the symbol which opened it so that recovery knows what can close it.
+   * @param opener the symbol opening the list: begin, then, else, loop, do, or for for the list of a for statement.
+   * @throws IOException if an IOException occured.
+   * @throws CompilationException if a compilation error occured.
+   */
+  private void statementList(int opener) throws IOException, CompilationException {
+    int outer = enclosing;
+    enclosing = opener;
+    _statementList_();
+    enclosing = outer;
+  }
+
   /**
     Begin processing a statement.
 
@@ -139,7 +237,7 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
           _forStatement_();
           break;
         default:
-          reportError("expected a statement (if/while/procedure/until/for)");
+          reportError(Diagnostic.Code.EXPECTED_STATEMENT);
           break;
       }
     } catch (CompilationException e) {
@@ -201,12 +299,12 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
       acceptTerminal(Token.ifSymbol);
       _condition_();
       acceptTerminal(Token.thenSymbol);
-      _statementList_();
+      statementList(Token.thenSymbol);
 
       // Optional else statement list
       if (nextToken.symbol == Token.elseSymbol) {
         acceptTerminal(Token.elseSymbol);
-        _statementList_();
+        statementList(Token.elseSymbol);
       }
 
       // Close if statement
@@ -234,7 +332,7 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
       acceptTerminal(Token.whileSymbol);
       _condition_();
       acceptTerminal(Token.loopSymbol);
-      _statementList_();
+      statementList(Token.loopSymbol);
 
       acceptTerminal(Token.endSymbol);
       acceptTerminal(Token.loopSymbol);
@@ -283,7 +381,7 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
       commenceNonterminal("UntilStatement");
 
       acceptTerminal(Token.doSymbol);
-      _statementList_();
+      statementList(Token.doSymbol);
       acceptTerminal(Token.untilSymbol);
       _condition_();
 
@@ -308,27 +406,26 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
       acceptTerminal(Token.forSymbol);
       acceptTerminal(Token.leftParenthesis);
 
-      // Store first assigned variable
-      Variable firstTempVariable = _assignmentStatement_();
+      // Variables declared from here to the end of the loop are scoped to it
+      myGenerate.enterScope();
+      scopeDepth++;
+      _assignmentStatement_();
       acceptTerminal(Token.semicolonSymbol);
       _condition_();
       acceptTerminal(Token.semicolonSymbol);
-
-      // Store second assigned variable
-      Variable secondTempVariable =_assignmentStatement_();
+      _assignmentStatement_();
       acceptTerminal(Token.rightParenthesis);
 
       acceptTerminal(Token.doSymbol);
-      _statementList_();
+      statementList(Token.forSymbol);
 
       acceptTerminal(Token.endSymbol);
       acceptTerminal(Token.loopSymbol);
 
       finishNonterminal("ForStatement");
 
-      // Remove any temporary variables (if only existing in this scope - otherwise keep)
-      removeVariable(firstTempVariable);
-      removeVariable(secondTempVariable);
+      // Remove any variables declared in this scope (variables which existed before the loop are kept)
+      exitScope();
     } catch (CompilationException e) {
       throw new CompilationException("compilation error parsing _forStatement_", nextToken.lineNumber, e);
     }
@@ -392,7 +489,7 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
           acceptTerminal(Token.stringConstant);
           break;
         default:
-          reportError("expected identifier/number/string");
+          reportError(Diagnostic.Code.EXPECTED_OPERAND);
           break;
       }
 
@@ -434,7 +531,7 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
           acceptTerminal(Token.lessEqualSymbol);
           break;
         default:
-          reportError("expected a conditional operator (>, >=, =, /=, <, <=)");
+          reportError(Diagnostic.Code.EXPECTED_CONDITIONAL_OPERATOR);
           break;
       }
       
@@ -477,31 +574,31 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
           // Don't allow subtraction of strings (but skip + because that is allowed)
           if (nextVar != null && (nextVar.type == Variable.Type.STRING && curType == Variable.Type.STRING)) {
             if (nextSymbol == Token.minusSymbol) {
-              reportError("cannot subtract variable of type " + nextVar.type + " from " + curTokRef + " (" + curType.name + ")");
+              reportError(Diagnostic.Code.SUBTRACT_VARIABLE, nextVar.type, curTokRef, curType.name);
             }
           }
 
           // Cannot add or subtract strings with any other type
           if (nextVar != null && (nextVar.type == Variable.Type.STRING && curType != Variable.Type.STRING) || (nextVar.type != Variable.Type.STRING && curType == Variable.Type.STRING)) {
             if (nextSymbol == Token.plusSymbol) {
-              reportError("cannot add variable of type " + nextVar.type + " to " + curTokRef + " (" + curType.name + ")");
+              reportError(Diagnostic.Code.ADD_VARIABLE, nextVar.type, curTokRef, curType.name);
             } else if (nextSymbol == Token.minusSymbol) {
-              reportError("cannot subtract variable of type " + nextVar.type + " from " + curTokRef + " (" + curType.name + ")");
+              reportError(Diagnostic.Code.SUBTRACT_VARIABLE, nextVar.type, curTokRef, curType.name);
             }
           }
         } else {
           // Cannot allow adding plain strings to anything other than strings
           if (curType == Variable.Type.STRING && nextToken.symbol != Token.stringConstant) {
             if (nextSymbol == Token.plusSymbol) {
-              reportError("cannot be added to " + curTokRef + " (" + curType.name + ")");
+              reportError(Diagnostic.Code.ADD_TO, curTokRef, curType.name);
             } else if (nextSymbol == Token.minusSymbol) {
-              reportError("cannot be subtracted from " + curTokRef + " (" + curType.name + ")");
+              reportError(Diagnostic.Code.SUBTRACT_FROM, curTokRef, curType.name);
             }
           } else if (curType != Variable.Type.STRING && nextToken.symbol == Token.stringConstant) {
             if (nextSymbol == Token.plusSymbol) {
-              reportError("cannot be added to " + curTokRef + " (" + curType.name + ")");
+              reportError(Diagnostic.Code.ADD_TO, curTokRef, curType.name);
             } else if (nextSymbol == Token.minusSymbol) {
-              reportError("cannot be subtracted from " + curTokRef + " (" + curType.name + ")");
+              reportError(Diagnostic.Code.SUBTRACT_FROM, curTokRef, curType.name);
             }
           }
         }
@@ -510,9 +607,9 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
         Variable.Type expressionType = _expression_();
         if (curType != expressionType && (curType == Variable.Type.STRING || expressionType == Variable.Type.STRING)) {
           if (nextSymbol == Token.plusSymbol) {
-            reportError("cannot add expressions of type Number to type String");
+            reportError(Diagnostic.Code.ADD_EXPRESSIONS);
           } else if (nextSymbol == Token.minusSymbol) {
-            reportError("cannot subtract expressions of type Number to type String");
+            reportError(Diagnostic.Code.SUBTRACT_EXPRESSIONS);
           } 
         }
       }
@@ -555,33 +652,33 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
           // Don't allow multiplication or division of strings
           if (nextVar != null && (nextVar.type == Variable.Type.STRING && curType == Variable.Type.STRING)) {
             if (nextSymbol == Token.timesSymbol) {
-              reportError("cannot multiply variable of type " + nextVar.type + " to " + curTokRef + " (" + curType.name + ")");
+              reportError(Diagnostic.Code.MULTIPLY_VARIABLE, nextVar.type, curTokRef, curType.name);
             } else if (nextSymbol == Token.divideSymbol) {
-              reportError("cannot divide variable of type " + nextVar.type + " into " + curTokRef + " (" + curType.name + ")");
+              reportError(Diagnostic.Code.DIVIDE_VARIABLE, nextVar.type, curTokRef, curType.name);
             }
           }
 
           // Cannot mutliply or divide strings with strings or any other types
           if (nextVar != null && (nextVar.type == Variable.Type.STRING && curType != Variable.Type.STRING) || (nextVar.type != Variable.Type.STRING && curType == Variable.Type.STRING)) {
             if (nextSymbol == Token.timesSymbol) {
-              reportError("cannot multiply variable of type " + nextVar.type + " to " + curTokRef + " (" + curType.name + ")");
+              reportError(Diagnostic.Code.MULTIPLY_VARIABLE, nextVar.type, curTokRef, curType.name);
             } else if (nextSymbol == Token.divideSymbol) {
-              reportError("cannot divide variable of type " + nextVar.type + " into " + curTokRef + " (" + curType.name + ")");
+              reportError(Diagnostic.Code.DIVIDE_VARIABLE, nextVar.type, curTokRef, curType.name);
             }
           }
         } else {
           // Cannot allow multiplying or dividing plain strings with anything other than strings
           if (curType == Variable.Type.STRING && nextToken.symbol != Token.stringConstant) {
             if (nextSymbol == Token.timesSymbol) {
-              reportError("cannot multiply " + nextToken.text + " with a String");
+              reportError(Diagnostic.Code.MULTIPLY_BY_STRING, nextToken.text);
             } else if (nextSymbol == Token.divideSymbol) {
-              reportError("cannot divide " + nextToken.text + " into a String");
+              reportError(Diagnostic.Code.DIVIDE_INTO_STRING, nextToken.text);
             }
           } else if (curType != Variable.Type.STRING && nextToken.symbol == Token.stringConstant) {
             if (nextSymbol == Token.timesSymbol) {
-              reportError("cannot multiply " + curTokRef + " with a String");
+              reportError(Diagnostic.Code.MULTIPLY_BY_STRING, curTokRef);
             } else if (nextSymbol == Token.divideSymbol) {
-              reportError("cannot divide " + curTokRef + " by a String");
+              reportError(Diagnostic.Code.DIVIDE_BY_STRING, curTokRef);
             }
           }
         }
@@ -590,9 +687,9 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
         Variable.Type expressionType = _term_();
         if (curType != expressionType && (curType == Variable.Type.STRING || expressionType == Variable.Type.STRING)) {
           if (nextSymbol == Token.timesSymbol) {
-            reportError("cannot multiply terms of type Number with type String");
+            reportError(Diagnostic.Code.MULTIPLY_TERMS);
           } else if (nextSymbol == Token.divideSymbol) {
-            reportError("cannot divide expressions of type Number with type String");
+            reportError(Diagnostic.Code.DIVIDE_EXPRESSIONS);
           } 
         }
       }
@@ -636,7 +733,7 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
           acceptTerminal(Token.rightParenthesis);
           break;
         default:
-          reportError("expected an identifier, number constant or ( expression )");
+          reportError(Diagnostic.Code.EXPECTED_FACTOR);
           break;
       }
 
@@ -652,24 +749,31 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
       ========================================================================================== **/
 
   /**
-   * Reports an error to the output.txt file and throws a CompilationException at the end.
-   * @param errorStr the human-readable error to output.
+   * Reports an error at the next token to the output.txt file and throws a CompilationException at the end.
+   * The error is recorded as a Diagnostic, whose message is only built if it is shown.
+   * @param code the kind of error.
+   * @param arguments the arguments of its message.
    * @throws IOException if an IOException occured.
    * @throws CompilationException if a compilation error occured.
    */
-  public void reportError(String errorStr) throws IOException, CompilationException {
-    String formattedErrStr = formatErrString(errorStr);
-    indent();
-    myGenerate.reportError(nextToken, formattedErrStr);
+  public void reportError(Diagnostic.Code code, Object... arguments) throws IOException, CompilationException {
+    if (tracing) {
+      indent();
+    }
+    myGenerate.reportError(new Diagnostic(code, lex.getFilename(), nextToken, -1, arguments));
   }
 
   /**
-   * Formats an error string to be output to the output.txt file.
-   * @param expected the string containing details of what is expected next.
-   * @return the formatted error string.
+   * Reports that the next token is not the symbol expected.
+   * @param symbol the symbol expected.
+   * @throws IOException if an IOException occured.
+   * @throws CompilationException if a compilation error occured.
    */
-  public String formatErrString(String expected) {
-    return "(" + lex.getFilename() + ":" + nextToken.lineNumber + ") found '" + nextToken.text + "' (" + Token.getName(nextToken.symbol) + "), " + expected;
+  public void reportExpected(int symbol) throws IOException, CompilationException {
+    if (tracing) {
+      indent();
+    }
+    myGenerate.reportError(new Diagnostic(Diagnostic.Code.EXPECTED_SYMBOL, lex.getFilename(), nextToken, symbol));
   }
 
   /**
@@ -682,7 +786,7 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
   public Variable checkIfDeclared(String identifier) throws IOException, CompilationException {
     Variable v = myGenerate.getVariable(identifier);
     if (v == null) {
-      reportError("variable with identifier '" + identifier + "' has not been declared");
+      reportError(Diagnostic.Code.UNDECLARED_VARIABLE, identifier);
     }
     return v;
   }
@@ -690,23 +794,223 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
   /**
    * Commences a non terminal symbol by calling the relevant method in the Generate class.
    * This method also provides output indentation for easier reading (+ less code repetition).
+   * Nothing is done when only recognising the input.
    * @param nonTerminal the non terminal string to commence.
    */
   public void commenceNonterminal(String nonTerminal) {
+    if (!tracing) {
+      return;
+    }
     indent();
     myGenerate.commenceNonterminal(nonTerminal);
     increaseTabIndent();
+    if (openCount == openNonterminals.length) {
+      openNonterminals = Arrays.copyOf(openNonterminals, 2 * openCount);
+    }
+    openNonterminals[openCount++] = nonTerminal;
   }
 
   /**
    * Finishes a non terminal symbol by calling the relevant method in the Generate class.
    * This method also provides output indentation for easier reading (+ less code repetition).
+   * Nothing is done when only recognising the input.
    * @param nonTerminal the non terminal string to finish.
    */
   public void finishNonterminal(String nonTerminal) {
+    if (!tracing) {
+      return;
+    }
     decreaseTabIndent();
     indent();
     myGenerate.finishNonterminal(nonTerminal);
+    if (openCount > 0) {
+      openCount--;
+    }
+  }
+
+  /**
+   * Closes the innermost for statement scope, removing the variables declared in it.
+   */
+  private void exitScope() {
+    for (Variable v : myGenerate.exitScope()) {
+      removeVariable(v);
+    }
+    scopeDepth--;
+  }
+
+  /**
+   * Recovers from an error in a statement: records the error, finishes the non terminals and closes the scopes the
+   * statement left open, so that the trace and variables are as if the statement had ended, then skips to its end.
+   * If the error was found at an else, end or until which cannot close the innermost statement list, skipping stops
+   * at once on that same token, so it is skipped as well along with the rest of the statement following it.
+   * @param e the error.
+   * @param open the number of non terminals open before the statement.
+   * @param scopes the number of scopes open before the statement.
+   * @param blocks the number of blocks open before the statement.
+   * @throws IOException if an IOException occured.
+   */
+  private void recover(CompilationException e, int open, int scopes, int blocks) throws IOException {
+    int errorToken = tokensRead;
+    recordError(e);
+    while (openCount > open) {
+      finishNonterminal(openNonterminals[openCount - 1]);
+    }
+    while (scopeDepth > scopes) {
+      exitScope();
+    }
+    synchronise(blockDepth - blocks);
+    if (tokensRead == errorToken && !closesList(nextToken.symbol)) {
+      boolean end = (nextToken.symbol == Token.endSymbol);
+      nextToken = readToken();
+      if (end && (nextToken.symbol == Token.ifSymbol || nextToken.symbol == Token.loopSymbol)) {
+        nextToken = readToken();
+      }
+      synchronise(0);
+    }
+    blockDepth = blocks;
+    closingBlock = false;
+    resumedAt = tokensRead;
+  }
+
+  /**
+   * Checks if a symbol at which skipping stops can close the innermost statement list, or carry it on.
+   * An end only closes it if followed by what the statement opening the list ends with: the end of file for the
+   * statement part, if for an if statement and loop for a while or for statement.
+   * @param symbol the symbol, as a class constant from Token.
+   * @return true unless the symbol is an else, end or until which cannot close the list.
+   * @throws IOException if an IOException occured.
+   */
+  private boolean closesList(int symbol) throws IOException {
+    switch (symbol) {
+      case Token.elseSymbol:
+        return enclosing == Token.thenSymbol;
+      case Token.untilSymbol:
+        return enclosing == Token.doSymbol;
+      case Token.endSymbol:
+        switch (enclosing) {
+          case Token.beginSymbol:
+            return peek(1) == Token.eofSymbol;
+          case Token.thenSymbol:
+          case Token.elseSymbol:
+            return peek(1) == Token.ifSymbol;
+          case Token.loopSymbol:
+          case Token.forSymbol:
+            return peek(1) == Token.loopSymbol;
+          default:
+            return false;
+        }
+      default:
+        return true;
+    }
+  }
+
+  /**
+   * Reports a semicolon missing between two statements, recording the error and carrying on from the next token as
+   * if the semicolon had been there.
+   * @throws IOException if an IOException occured.
+   */
+  private void missingSemicolon() throws IOException {
+    try {
+      reportExpected(Token.semicolonSymbol);
+    } catch (CompilationException e) {
+      recordError(e);
+      resumedAt = tokensRead;
+    }
+  }
+
+  /**
+   * Checks if a symbol can begin a statement.
+   * @param symbol the symbol, as a class constant from Token.
+   * @return true if a statement can begin with the symbol.
+   */
+  private static boolean startsStatement(int symbol) {
+    switch (symbol) {
+      case Token.identifier:
+      case Token.ifSymbol:
+      case Token.whileSymbol:
+      case Token.callSymbol:
+      case Token.doSymbol:
+      case Token.forSymbol:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Counts the blocks opened and closed by accepting a token, so that recovery knows how many blocks an abandoned
+   * statement left open. The loop of end loop closes a block rather than opening one.
+   * @param symbol the symbol accepted.
+   */
+  private void countBlocks(int symbol) {
+    switch (symbol) {
+      case Token.beginSymbol:
+      case Token.thenSymbol:
+      case Token.doSymbol:
+        blockDepth++;
+        break;
+      case Token.loopSymbol:
+        if (!closingBlock) {
+          blockDepth++;
+        }
+        break;
+      case Token.endSymbol:
+      case Token.untilSymbol:
+        blockDepth--;
+        break;
+      default:
+        break;
+    }
+    closingBlock = (symbol == Token.endSymbol);
+  }
+
+  /**
+   * Skips tokens up to one which can follow a statement (';', end, else or until) or the end of file.
+   * Blocks still open, whether begun by the abandoned statement or while skipping (by then, loop or do), are skipped
+   * whole along with the end if, end loop or until closing them, so that the end of a block is not taken for the end
+   * of the statement list.
+   * @param blocks the number of blocks the abandoned statement left open.
+   * @throws IOException if an IOException occured.
+   */
+  private void synchronise(int blocks) throws IOException {
+    if (closingBlock && (nextToken.symbol == Token.ifSymbol || nextToken.symbol == Token.loopSymbol)) {
+      // The end of end if or end loop has been accepted, and has already closed its block
+      nextToken = readToken();
+    }
+    while (nextToken.symbol != Token.eofSymbol) {
+      switch (nextToken.symbol) {
+        case Token.semicolonSymbol:
+        case Token.elseSymbol:
+          if (blocks == 0) {
+            return;
+          }
+          break;
+        case Token.endSymbol:
+          if (blocks == 0) {
+            return;
+          }
+          blocks--;
+          nextToken = readToken();
+          if (nextToken.symbol != Token.ifSymbol && nextToken.symbol != Token.loopSymbol) {
+            continue;
+          }
+          break;
+        case Token.untilSymbol:
+          if (blocks == 0) {
+            return;
+          }
+          blocks--;
+          break;
+        case Token.thenSymbol:
+        case Token.loopSymbol:
+        case Token.doSymbol:
+          blocks++;
+          break;
+        default:
+          break;
+      }
+      nextToken = readToken();
+    }
   }
 
   /**
@@ -719,7 +1023,9 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
   public Variable addVariable(String variableIdentifier, Variable.Type type) {
     Variable v = null;
     if (myGenerate.getVariable(variableIdentifier) == null) {
-      indent();
+      if (tracing) {
+        indent();
+      }
       v = new Variable(variableIdentifier, type);
       myGenerate.addVariable(v);
     }
@@ -733,7 +1039,9 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
    */
   public void removeVariable(Variable v) {
     if (v != null && myGenerate.getVariable(v.identifier) != null) {
-      indent();
+      if (tracing) {
+        indent();
+      }
       myGenerate.removeVariable(v);
     }
   }
@@ -742,7 +1050,7 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
    * Indents a line in the output.txt file showing the parse tree.
    */
   public void indent() {
-    System.out.print(new String(new char[numTabs*2]).replace('\0', ' '));
+    trace.indent(numTabs);
   }
 
   /**
@@ -66,6 +66,11 @@ public class Token
 	public String text ;
 	/** The line number of the original text in the source file. */
 	public int lineNumber ;
+	/** The identifier number given by the lexical analyser, or -1 if this is not an identifier. */
+	public int id ;
+	/** The column of the first character of the original text in its line,
+	  counting from 0, or -1 if it is not known. */
+	public int column = -1 ;
 
 	/** Constructs a new token with a given token type and line number.
 
@@ -74,10 +79,25 @@ public class Token
 	  @param l The line number of the original string.
 	 */
 	public Token(int s, String t, int l)
+	{
+		this(s, t, l, -1) ;
+	} // end of constructor method
+
+	/** Constructs a new identifier token with a given token type, line number
+	  and identifier number.  Tokens for the same identifier from the same
+	  lexical analyser share both the number and the text.
+
+	  @param s The type of symbol, typically as a class constant from Token.
+	  @param t The original string recognised from the source file.
+	  @param l The line number of the original string.
+	  @param i The identifier number, or -1 if this is not an identifier.
+	 */
+	public Token(int s, String t, int l, int i)
 	{
 		symbol = s ;
 		text = t ;
 		lineNumber = l ;
+		id = i ;
 	} // end of constructor method
 
 	/** Constructs a new token from a StringBuffer, given type and line number.
@@ -92,6 +112,7 @@ public class Token
 		symbol = s ;
 		text = new String(t) ;
 		lineNumber = l ;
+		id = -1 ;
 	} // end of constructor method
 
 	/** Returns a string representation of a symbol type.
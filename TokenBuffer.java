@@ -0,0 +1,366 @@
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Code: TokenBuffer Class   TokenBuffer.java
+ *
+ * The whole token stream of a source, lexed in one go and held in parallel arrays of symbol,
+ * start offset, length, line and identifier number alongside the source characters they index,
+ * rather than as a Token object and String per token. Text is only made when it is asked for,
+ * and identifiers share the canonical text of the lexical analyser which numbered them.
+ * A cursor with unlimited lookahead lets a syntax analyser read the tokens in order without creating any.
+ */
+public class TokenBuffer {
+
+  private static final int MIN_TOKENS = 256;  /** Smallest token capacity allocated **/
+
+  final LexicalAnalyser lex;  /** Scans the source, and numbers its identifiers **/
+  char[] text;                /** The source, with line ends normalised **/
+  int length;                 /** Characters of text in use **/
+
+  int[] symbols;  /** Type of each token, as a class constant from Token **/
+  int[] starts;   /** Offset of the first character of each token **/
+  int[] lengths;  /** Number of characters in each token **/
+  int[] lines;    /** Line number of each token **/
+  int[] ids;      /** Identifier number of each token, or -1 **/
+  int count;      /** Number of tokens, the last being the end of file **/
+
+  private int position;  /** Index of the token at the cursor **/
+
+  int columnFrom;  /** Offset up to which lineStart has been brought up to date **/
+  int lineStart;   /** Offset of the first character of the line holding columnFrom **/
+
+  /**
+   * Lexes the whole of a source held in memory.
+   * @param name the name to report for the source, in place of a file name.
+   * @param source the source text.
+   */
+  public TokenBuffer(String name, CharSequence source) {
+    text = new char[source.length()];
+    if (source instanceof String) {
+      ((String) source).getChars(0, text.length, text, 0);
+    } else {
+      for (int i = 0; i < text.length; i++) {
+        text[i] = source.charAt(i);
+      }
+    }
+    length = LexicalAnalyser.normaliseLineEnds(text, text.length);
+    lex = LexicalAnalyser.overText(name, text, length);
+
+    // Programs average three to five characters per token, so this rarely needs to grow
+    ensureCapacity(Math.max(MIN_TOKENS, length / 3));
+    try {
+      int symbol;
+      do {
+        symbol = lex.advance();
+        ensureCapacity(count + 1);
+        symbols[count] = symbol;
+        starts[count] = lex.getTokenStart();
+        lengths[count] = lex.getTokenLength();
+        lines[count] = lex.getTokenLine();
+        ids[count] = lex.getTokenId();
+        count++;
+      } while (symbol != Token.eofSymbol);
+    } catch (IOException e) {
+      // Cannot happen: the source is held in memory
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Lexes the whole of a file, decoded with the platform's default charset as FileReader would.
+   * @param fileName the file to read.
+   * @return the token buffer.
+   * @throws IOException if the file cannot be read.
+   */
+  public static TokenBuffer fromFile(String fileName) throws IOException {
+    return new TokenBuffer(fileName, new String(Files.readAllBytes(Paths.get(fileName)), Charset.defaultCharset()));
+  }
+
+  /**
+   * Makes room for at least the given number of tokens.
+   * @param capacity the number of tokens.
+   */
+  void ensureCapacity(int capacity) {
+    if (symbols == null) {
+      symbols = new int[capacity];
+      starts = new int[capacity];
+      lengths = new int[capacity];
+      lines = new int[capacity];
+      ids = new int[capacity];
+    } else if (capacity > symbols.length) {
+      capacity = Math.max(capacity, 2 * symbols.length);
+      symbols = Arrays.copyOf(symbols, capacity);
+      starts = Arrays.copyOf(starts, capacity);
+      lengths = Arrays.copyOf(lengths, capacity);
+      lines = Arrays.copyOf(lines, capacity);
+      ids = Arrays.copyOf(ids, capacity);
+    }
+  }
+
+  /** ==========================================================================================
+          Reading tokens in order
+      ========================================================================================== **/
+
+  /**
+   * Gets the index of the token at the cursor.
+   * @return the index of the token.
+   */
+  public int getPosition() {
+    return position;
+  }
+
+  /**
+   * Moves the cursor, such as back to the first token to read the tokens again.
+   * @param position the index of the token to move to.
+   */
+  public void setPosition(int position) {
+    this.position = Math.max(0, Math.min(position, count - 1));
+    // The next column is found from the start of its own line rather than by reading on from the last one
+    columnFrom = length + 1;
+  }
+
+  /**
+   * Looks ahead of the cursor without moving it.
+   * @param k how many tokens ahead to look, 0 for the token at the cursor.
+   * @return the type of that token, as a class constant from Token; the end of file beyond the last token.
+   */
+  public int peek(int k) {
+    return symbols[Math.min(position + k, count - 1)];
+  }
+
+  /**
+   * Reads the token at the cursor into a Token and moves the cursor on, staying at the end of file once reached.
+   * @param token the token to fill in, which is reused rather than a new one created, or null to create one.
+   * @return the token filled in.
+   */
+  public Token next(Token token) {
+    int i = position;
+    if (token == null) {
+      token = new Token(symbols[i], getText(i), lines[i], ids[i]);
+    } else {
+      token.symbol = symbols[i];
+      token.text = getText(i);
+      token.lineNumber = lines[i];
+      token.id = ids[i];
+    }
+    token.column = getColumn(i);
+    if (position < count - 1) {
+      position++;
+    }
+    return token;
+  }
+
+  /** ==========================================================================================
+          Tokens by index
+      ========================================================================================== **/
+
+  /**
+   * Gets the index of the token containing, or else following, the given offset.
+   * @param offset the offset in the source.
+   * @return the index of the token, which is the end of file if the offset is beyond the last token.
+   */
+  public int findToken(int offset) {
+    int low = 0, high = count - 1;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (starts[middle] + lengths[middle] <= offset) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Gets the number of tokens, including the end of file.
+   * @return the number of tokens.
+   */
+  public int getTokenCount() {
+    return count;
+  }
+
+  /**
+   * Gets the type of a token.
+   * @param i the index of the token.
+   * @return the type, as a class constant from Token.
+   */
+  public int getSymbol(int i) {
+    return symbols[i];
+  }
+
+  /**
+   * Gets the offset in the source of the first character of a token (its opening quote, for a string).
+   * @param i the index of the token.
+   * @return the offset, counting each line end as one character.
+   */
+  public int getStart(int i) {
+    return starts[i];
+  }
+
+  /**
+   * Gets the number of source characters making up a token.
+   * @param i the index of the token.
+   * @return the number of characters.
+   */
+  public int getLength(int i) {
+    return lengths[i];
+  }
+
+  /**
+   * Gets the line number of a token.
+   * @param i the index of the token.
+   * @return the line number, as the lexical analyser reports it.
+   */
+  public int getLine(int i) {
+    return lines[i];
+  }
+
+  /**
+   * Gets the column of a token in its line, as LexicalAnalyser.getTokenColumn() would report it.
+   * Reading tokens in order only looks at each character once, since the start of the line is carried forward.
+   * @param i the index of the token.
+   * @return the column, counting from 0.
+   */
+  public int getColumn(int i) {
+    int start = starts[i];
+    if (start > length) {
+      // The end of file following the line end added to an unterminated last line
+      return 0;
+    }
+    if (start < columnFrom) {
+      lineStart = start;
+      while (lineStart > 0 && text[lineStart - 1] != '\n') {
+        lineStart--;
+      }
+    } else {
+      for (int p = columnFrom; p < start; p++) {
+        if (text[p] == '\n') {
+          lineStart = p + 1;
+        }
+      }
+    }
+    columnFrom = start;
+    return start - lineStart;
+  }
+
+  /**
+   * Gets the identifier number of a token, which is the same for every token of the same identifier.
+   * @param i the index of the token.
+   * @return the identifier number, or -1 if the token is not an identifier.
+   */
+  public int getId(int i) {
+    return ids[i];
+  }
+
+  /**
+   * Gets the text of a token, as LexicalAnalyser.getNextToken() would report it. Only number and string constants,
+   * and reserved words written in other than lower case, make a new String; identifiers share the lexical
+   * analyser's text and other tokens the name of their symbol.
+   * @param i the index of the token.
+   * @return the text of the token.
+   */
+  public String getText(int i) {
+    int symbol = symbols[i];
+    if (ids[i] >= 0) {
+      return lex.getIdentifier(ids[i]);
+    } else if (symbol == Token.stringConstant) {
+      int end = starts[i] + lengths[i];
+      if (end > length) {
+        // An unterminated string runs on through the line end added to an unterminated last line
+        return new String(text, starts[i] + 1, length - starts[i] - 1) + "\n";
+      }
+      if (end > starts[i] + 1 && text[end - 1] == '"') {
+        end--;
+      }
+      return new String(text, starts[i] + 1, end - starts[i] - 1);
+    } else if (symbol == Token.eofSymbol || symbol == Token.errorSymbol) {
+      return "";
+    } else if (symbol == Token.numberConstant) {
+      return new String(text, starts[i], lengths[i]);
+    } else if (Character.isLetter(text[starts[i]]) && !isWrittenAsName(i)) {
+      // Reserved words keep their text as written, which only differs from their name in case
+      return new String(text, starts[i], lengths[i]);
+    } else {
+      return Token.getName(symbol);
+    }
+  }
+
+  /**
+   * Checks if a token is written exactly as the name of its symbol.
+   * @param i the index of the token.
+   * @return true if the characters of the token are those of its name.
+   */
+  private boolean isWrittenAsName(int i) {
+    String name = Token.getName(symbols[i]);
+    if (name.length() != lengths[i]) {
+      return false;
+    }
+    int start = starts[i];
+    for (int k = 0; k < lengths[i]; k++) {
+      if (text[start + k] != name.charAt(k)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Creates a Token for a token, as LexicalAnalyser.getNextToken() would return it.
+   * @param i the index of the token.
+   * @return the token.
+   */
+  public Token getToken(int i) {
+    Token token = new Token(symbols[i], getText(i), lines[i], ids[i]);
+    token.column = getColumn(i);
+    return token;
+  }
+
+  /** ==========================================================================================
+          The source
+      ========================================================================================== **/
+
+  /**
+   * Gets the name reported for the source.
+   * @return the file name, or the name given for source held in memory.
+   */
+  public String getFilename() {
+    return lex.getFilename();
+  }
+
+  /**
+   * Gets the source text, with line ends normalised.
+   * @return the source text.
+   */
+  public String getSource() {
+    return new String(text, 0, length);
+  }
+
+  /**
+   * Gets the number of characters in the source, with line ends normalised.
+   * @return the number of characters.
+   */
+  public int getSourceLength() {
+    return length;
+  }
+
+  /**
+   * Gets the lexical analyser which scanned the source, and numbers its identifiers.
+   * @return the lexical analyser.
+   */
+  LexicalAnalyser getLexicalAnalyser() {
+    return lex;
+  }
+
+  /**
+   * Creates a lexical analyser over a copy of the source.
+   * @return a lexical analyser positioned at the start of the source.
+   */
+  public LexicalAnalyser newLexicalAnalyser() {
+    return LexicalAnalyser.fromSource(lex.getFilename(), Arrays.copyOf(text, length));
+  }
+}
@@ -0,0 +1,218 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * Code: TraceSink Class   TraceSink.java
+ *
+ * Destination for the rgg trace written by the syntax analyser and code generator.
+ * Lines are written a piece at a time so that no intermediate strings need to be built.
+ * Sinks are available which write straight to a PrintStream, buffer their output, collect it in memory,
+ * or discard it altogether.
+ */
+public abstract class TraceSink {
+
+  private static final String LINE_SEPARATOR = System.lineSeparator();  /** Ends each line, as println would **/
+  private static final int BUFFER_SIZE = 1 << 16;                       /** Characters buffered before writing **/
+  private static final int MAX_INDENT = 64;                             /** Deepest indentation written in one piece **/
+  private static final String[] INDENTS = new String[MAX_INDENT + 1];  /** Indentation strings for each level **/
+
+  static {
+    INDENTS[0] = "";
+    for (int i = 1; i <= MAX_INDENT; i++) {
+      INDENTS[i] = INDENTS[i - 1] + "  ";
+    }
+  }
+
+  /** A sink which discards everything written to it **/
+  public static final TraceSink NULL = new TraceSink() {
+    @Override
+    public TraceSink print(String s) {
+      return this;
+    }
+
+    @Override
+    public TraceSink print(int i) {
+      return this;
+    }
+
+    @Override
+    public TraceSink println() {
+      return this;
+    }
+
+    @Override
+    public TraceSink indent(int levels) {
+      return this;
+    }
+
+    @Override
+    public boolean isEnabled() {
+      return false;
+    }
+  };
+
+  /**
+   * Appends a string to the current line.
+   * @param s the string to write.
+   * @return this sink.
+   */
+  public abstract TraceSink print(String s);
+
+  /**
+   * Appends a number to the current line.
+   * @param i the number to write.
+   * @return this sink.
+   */
+  public abstract TraceSink print(int i);
+
+  /**
+   * Ends the current line.
+   * @return this sink.
+   */
+  public abstract TraceSink println();
+
+  /**
+   * Indents the current line by two spaces per level, using shared precomputed strings
+   * so that no allocation is needed however deep the indentation.
+   * @param levels the number of levels to indent by.
+   * @return this sink.
+   */
+  public TraceSink indent(int levels) {
+    for (; levels > MAX_INDENT; levels -= MAX_INDENT) {
+      print(INDENTS[MAX_INDENT]);
+    }
+    return print(INDENTS[levels]);
+  }
+
+  /**
+   * Writes any buffered output to its destination.
+   */
+  public void flush() {
+  }
+
+  /**
+   * Reports whether anything written to this sink is kept, so callers can skip building trace output altogether.
+   * @return false if everything written is discarded.
+   */
+  public boolean isEnabled() {
+    return true;
+  }
+
+  /**
+   * Creates a sink which writes each piece straight to a PrintStream, as the trace always used to be written.
+   * @param out the stream to write to.
+   * @return the new sink.
+   */
+  public static TraceSink printStream(PrintStream out) {
+    return new TraceSink() {
+      @Override
+      public TraceSink print(String s) {
+        out.print(s);
+        return this;
+      }
+
+      @Override
+      public TraceSink print(int i) {
+        out.print(i);
+        return this;
+      }
+
+      @Override
+      public TraceSink println() {
+        out.println();
+        return this;
+      }
+
+      @Override
+      public void flush() {
+        out.flush();
+      }
+    };
+  }
+
+  /**
+   * Creates a sink which buffers its output, only writing to the stream when the buffer fills or it is flushed.
+   * @param out the stream to write to.
+   * @return the new sink.
+   */
+  public static TraceSink buffered(OutputStream out) {
+    return buffered(new OutputStreamWriter(out));
+  }
+
+  /**
+   * Creates a sink which buffers its output, only writing when the buffer fills or it is flushed.
+   * @param out the writer to write to.
+   * @return the new sink.
+   */
+  public static TraceSink buffered(Writer out) {
+    Writer writer = new BufferedWriter(out, BUFFER_SIZE);
+    return new TraceSink() {
+      @Override
+      public TraceSink print(String s) {
+        try {
+          writer.write(s);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+        return this;
+      }
+
+      @Override
+      public TraceSink print(int i) {
+        return print(Integer.toString(i));
+      }
+
+      @Override
+      public TraceSink println() {
+        return print(LINE_SEPARATOR);
+      }
+
+      @Override
+      public void flush() {
+        try {
+          writer.flush();
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    };
+  }
+
+  /**
+   * Creates a sink which collects its output in memory, available from toString().
+   * @return the new sink.
+   */
+  public static TraceSink inMemory() {
+    return new TraceSink() {
+      private final StringBuilder buffer = new StringBuilder();
+
+      @Override
+      public TraceSink print(String s) {
+        buffer.append(s);
+        return this;
+      }
+
+      @Override
+      public TraceSink print(int i) {
+        buffer.append(i);
+        return this;
+      }
+
+      @Override
+      public TraceSink println() {
+        buffer.append(LINE_SEPARATOR);
+        return this;
+      }
+
+      @Override
+      public String toString() {
+        return buffer.toString();
+      }
+    };
+  }
+}
@@ -0,0 +1,78 @@
+/**
+ * Code: TreeGenerate Class   TreeGenerate.java
+ *
+ * Generate class which builds a ParseTree of everything parsed, as well as managing variables and
+ * reporting errors as Generate does. Pass one to AbstractSyntaxAnalyser.parse(Generate, PrintStream);
+ * terminals and non-terminals are only reported by a parse, not by recognise().
+ * The end of file is not part of the tree.
+ */
+public class TreeGenerate extends Generate {
+
+  private static final int INITIAL_NODES = 1024;  /** Node capacity allowed for by default **/
+
+  private final ParseTree tree;  /** The tree being built **/
+
+  /**
+   * Initialises a generator which builds a tree and writes no trace.
+   */
+  public TreeGenerate() {
+    this(TraceSink.NULL, INITIAL_NODES);
+  }
+
+  /**
+   * Initialises a generator which builds a tree and also writes the usual trace.
+   * @param trace the sink to write the trace to.
+   * @param capacity the number of nodes to allow for before growing, about two and a half times the number of tokens.
+   */
+  public TreeGenerate(TraceSink trace, int capacity) {
+    super(trace);
+    tree = new ParseTree(capacity);
+  }
+
+  /**
+   * Adds a terminal to the tree, and to the trace.
+   * @param token the token accepted.
+   */
+  @Override
+  public void insertTerminal(Token token) {
+    if (trace.isEnabled()) {
+      super.insertTerminal(token);
+    }
+    if (token.symbol != Token.eofSymbol) {
+      tree.terminal(token);
+    }
+  }
+
+  /**
+   * Begins a non-terminal in the tree, and in the trace.
+   * @param name the name of the non-terminal.
+   */
+  @Override
+  public void commenceNonterminal(String name) {
+    if (trace.isEnabled()) {
+      super.commenceNonterminal(name);
+    }
+    tree.begin(ParseTree.Kind.of(name));
+  }
+
+  /**
+   * Finishes a non-terminal in the tree, and in the trace.
+   * @param name the name of the non-terminal.
+   */
+  @Override
+  public void finishNonterminal(String name) {
+    if (trace.isEnabled()) {
+      super.finishNonterminal(name);
+    }
+    tree.finish();
+  }
+
+  /**
+   * Gets the tree built. If the parse stopped at an error, it holds everything parsed before the error.
+   * @return the tree.
+   */
+  public ParseTree getTree() {
+    tree.close();
+    return tree;
+  }
+}